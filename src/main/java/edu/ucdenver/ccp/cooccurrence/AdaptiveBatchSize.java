@@ -0,0 +1,42 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import java.time.Duration;
+
+// Picks Node Normalizer batch sizes from the latency of the batches already sent: the next batch gets as many curies as the observed
+// per-curie time says will take targetLatency, kept within [minimum, maximum]. The per-curie time is an exponentially weighted average,
+// so one slow batch nudges the size down instead of collapsing it. It starts at initial until the first batch comes back.
+public class AdaptiveBatchSize {
+
+    private static final double SMOOTHING = 0.3;
+
+    private final int initial;
+    private final int minimum;
+    private final int maximum;
+    private final long targetNanos;
+    private double nanosPerCurie = -1;
+
+    public AdaptiveBatchSize(int initial, int minimum, int maximum, Duration targetLatency) {
+        if (minimum < 1 || minimum > maximum || initial < minimum || initial > maximum) {
+            throw new IllegalArgumentException(String.format("Batch sizes must satisfy 1 <= minimum (%d) <= initial (%d) <= maximum (%d)", minimum, initial, maximum));
+        }
+        this.initial = initial;
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.targetNanos = targetLatency.toNanos();
+    }
+
+    public synchronized int next() {
+        if (nanosPerCurie <= 0) {
+            return initial;
+        }
+        return (int) Math.max(minimum, Math.min(maximum, targetNanos / nanosPerCurie));
+    }
+
+    public synchronized void record(int batchSize, long elapsedNanos) {
+        if (batchSize <= 0) {
+            return;
+        }
+        double observed = (double) elapsedNanos / batchSize;
+        nanosPerCurie = nanosPerCurie <= 0 ? observed : SMOOTHING * observed + (1 - SMOOTHING) * nanosPerCurie;
+    }
+}
@@ -0,0 +1,34 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(LookupCacheProperties.class)
+public class CacheConfiguration {
+
+    @Bean
+    public LookupCacheManager cacheManager(LookupCacheProperties properties) {
+        // Regions are only created on first use, so check the configured ones now rather than on some later request.
+        properties.getRegions().keySet().forEach(properties::getRegion);
+        return new LookupCacheManager(properties);
+    }
+
+    public static Caffeine<Object, Object> newBuilder(LookupCacheProperties.Region region, CacheStatsCounter statsCounter) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats(() -> statsCounter);
+        if (region.getMaximumWeight() != null) {
+            builder = builder.maximumWeight(region.getMaximumWeight().toBytes()).weigher(new CacheWeigher());
+        } else if (region.getMaximumSize() != null) {
+            builder.maximumSize(region.getMaximumSize());
+        }
+        if (region.getExpireAfterAccess() != null) {
+            builder.expireAfterAccess(region.getExpireAfterAccess());
+        }
+        if (region.getExpireAfterWrite() != null) {
+            builder.expireAfterWrite(region.getExpireAfterWrite());
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,57 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+
+// Caffeine's standard statistics plus a LatencyHistogram of load times, so /cache can report load time percentiles and not just the average.
+public class CacheStatsCounter implements StatsCounter {
+
+    private final StatsCounter delegate = new ConcurrentStatsCounter();
+    private final LatencyHistogram loadTimes = new LatencyHistogram();
+
+    @Override
+    public void recordHits(int count) {
+        delegate.recordHits(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        delegate.recordMisses(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        delegate.recordLoadSuccess(loadTime);
+        loadTimes.record(loadTime);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTime) {
+        delegate.recordLoadFailure(loadTime);
+        loadTimes.record(loadTime);
+    }
+
+    // Still abstract in Caffeine 2.x, which Spring Boot 2.6 uses; the cache itself only calls the (weight, cause) version.
+    @Override
+    @SuppressWarnings("deprecation")
+    public void recordEviction() {
+        delegate.recordEviction(1, RemovalCause.SIZE);
+    }
+
+    @Override
+    public void recordEviction(int weight, RemovalCause cause) {
+        delegate.recordEviction(weight, cause);
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return delegate.snapshot();
+    }
+
+    // The load time (in nanoseconds) that the given fraction of loads took at most, or 0 if nothing has been loaded.
+    public long getLoadTimePercentile(double fraction) {
+        return loadTimes.getPercentile(fraction);
+    }
+}
@@ -0,0 +1,66 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+
+import java.util.Collection;
+import java.util.Map;
+
+// Estimates the retained heap of a cache entry in bytes, for the maximum-weight bound of each cache region. The cached values are all built
+// from strings, boxed numbers, int arrays, lists, maps and PairTables, so those are walked (once, when the entry is stored) and anything else gets a flat guess.
+// The numbers assume a 64-bit JVM with compressed oops and compact strings; they only need to be right to within a small factor.
+public class CacheWeigher implements Weigher<Object, Object> {
+
+    private static final int OBJECT_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int STRING_BYTES = 40; // String header and fields plus the backing array's header
+    private static final int MAP_ENTRY_BYTES = 32;
+
+    @Override
+    public int weigh(Object key, Object value) {
+        long bytes = estimate(key) + estimate(value);
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    public static long estimate(Object object) {
+        if (object == null) {
+            return 0;
+        }
+        if (object instanceof String) {
+            return STRING_BYTES + ((String) object).length();
+        }
+        if (object instanceof Number || object instanceof Boolean) {
+            return OBJECT_BYTES;
+        }
+        if (object instanceof int[]) {
+            return OBJECT_BYTES + (long) Integer.BYTES * ((int[]) object).length;
+        }
+        if (object instanceof Collection) {
+            Collection<?> collection = (Collection<?>) object;
+            long bytes = OBJECT_BYTES * 2 + (long) REFERENCE_BYTES * collection.size();
+            for (Object element : collection) {
+                bytes += estimate(element);
+            }
+            return bytes;
+        }
+        if (object instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) object;
+            long bytes = OBJECT_BYTES * 3 + (long) (MAP_ENTRY_BYTES + REFERENCE_BYTES * 2) * map.size();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                bytes += estimate(entry.getKey()) + estimate(entry.getValue());
+            }
+            return bytes;
+        }
+        if (object instanceof PairTable) {
+            PairTable<?> table = (PairTable<?>) object;
+            return OBJECT_BYTES * 2 + table.getKeyBytes() + estimate(table.getValues());
+        }
+        if (object instanceof Object[]) {
+            long bytes = OBJECT_BYTES;
+            for (Object element : (Object[]) object) {
+                bytes += REFERENCE_BYTES + estimate(element);
+            }
+            return bytes;
+        }
+        return OBJECT_BYTES * 4;
+    }
+}
@@ -0,0 +1,82 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import edu.ucdenver.ccp.cooccurrence.entities.ConceptPair;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+// Receives the concept pairs of one query edge as they are assembled (already held to the edge's attribute constraints, see ConstraintPlan)
+// and keeps them. With a limit, only the best maxResults by the ranking are kept, in a bounded min-heap: a pair that doesn't beat the worst one
+// held is discarded on arrival, so memory and everything downstream (enrichment, the knowledge graph, serialization) is bounded by the
+// limit rather than by the number of candidates. Ties keep the pair that arrived first. Not thread safe.
+final class ConceptPairCollector implements Consumer<ConceptPair> {
+
+    private static final Comparator<RankedPair> WORST_FIRST = Comparator.<RankedPair>comparingDouble(rankedPair -> rankedPair.score)
+            .thenComparing(Comparator.<RankedPair>comparingLong(rankedPair -> rankedPair.sequence).reversed());
+
+    private final int maxResults;
+    private final ResultRanking ranking;
+    private final List<ConceptPair> pairs = new ArrayList<>();
+    private final PriorityQueue<RankedPair> heap;
+    private long candidates;
+
+    // maxResults of 0 or less means no limit, in which case the ranking is not used.
+    ConceptPairCollector(int maxResults, ResultRanking ranking) {
+        this.maxResults = maxResults;
+        this.ranking = ranking;
+        this.heap = maxResults > 0 ? new PriorityQueue<>(Math.min(maxResults, 1 << 16), WORST_FIRST) : null;
+    }
+
+    @Override
+    public void accept(ConceptPair pair) {
+        candidates++;
+        if (heap == null) {
+            pairs.add(pair);
+            return;
+        }
+        RankedPair rankedPair = new RankedPair(pair, ranking.score(pair), candidates);
+        if (heap.size() < maxResults) {
+            heap.add(rankedPair);
+        } else if (WORST_FIRST.compare(rankedPair, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(rankedPair);
+        }
+    }
+
+    // The pairs kept: in arrival order without a limit, best first with one.
+    List<ConceptPair> getPairs() {
+        if (heap == null) {
+            return pairs;
+        }
+        List<RankedPair> rankedPairs = new ArrayList<>(heap);
+        rankedPairs.sort(WORST_FIRST.reversed());
+        List<ConceptPair> topPairs = new ArrayList<>(rankedPairs.size());
+        rankedPairs.forEach(rankedPair -> topPairs.add(rankedPair.pair));
+        return topPairs;
+    }
+
+    // Whether pairs may be discarded, so that anything only the kept pairs need can wait for getPairs.
+    boolean isLimited() {
+        return heap != null;
+    }
+
+    // The number of pairs received, kept or not.
+    long getCandidateCount() {
+        return candidates;
+    }
+
+    private static final class RankedPair {
+        private final ConceptPair pair;
+        private final double score;
+        private final long sequence;
+
+        private RankedPair(ConceptPair pair, double score, long sequence) {
+            this.pair = pair;
+            this.score = score;
+            this.sequence = sequence;
+        }
+    }
+}
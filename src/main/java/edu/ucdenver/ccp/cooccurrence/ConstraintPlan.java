@@ -0,0 +1,110 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import edu.ucdenver.ccp.cooccurrence.TRAPI.AttributeConstraint;
+import edu.ucdenver.ccp.cooccurrence.entities.ConceptPair;
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+import edu.ucdenver.ccp.cooccurrence.entities.Metrics;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+// The attribute constraints of a query edge, arranged to be applied while cooccurrences are read instead of on finished ConceptPairs.
+// A part of a pair is kept when it meets every constraint, and a pair when any of its parts is kept, as ConceptPair.satisfyConstraint does.
+// Three things follow from the constraints:
+// - the document parts a pair can be kept in, from the biolink:supporting_text_located_in constraints, so the tables of the other parts
+//   are never queried;
+// - the least pair count a kept part can have, which the database applies as a HAVING clause (and the bitmap lookup as a cardinality check)
+//   so pairs in too few documents are never read at all;
+// - a test on a part's metrics, which only need the raw counts, so a part can be dropped before any of its document ids are read.
+final class ConstraintPlan {
+
+    static final ConstraintPlan NONE = new ConstraintPlan(Collections.emptyList());
+
+    private static final String PAIR_COUNT = "biolink:tmkp_concept_pair_count";
+
+    private final List<AttributeConstraint> constraints;
+    private final int minPairCount;
+    private final Set<DocumentPart> documentParts;
+    private final boolean metricConstraints;
+
+    private ConstraintPlan(List<AttributeConstraint> constraints) {
+        this.constraints = constraints;
+        int min = 1;
+        Set<DocumentPart> parts = EnumSet.allOf(DocumentPart.class);
+        for (AttributeConstraint constraint : constraints) {
+            if (PAIR_COUNT.equals(constraint.getId())) {
+                min = Math.max(min, getMinPairCount(constraint));
+            } else if (ConceptPair.LOCATED_IN.equals(constraint.getId())) {
+                parts.removeIf(part -> !ConceptPair.meetsLocationConstraint(constraint, part));
+            }
+        }
+        this.minPairCount = min;
+        this.documentParts = Collections.unmodifiableSet(parts);
+        this.metricConstraints = constraints.stream().anyMatch(constraint -> !ConceptPair.LOCATED_IN.equals(constraint.getId()));
+    }
+
+    static ConstraintPlan of(List<AttributeConstraint> constraints) {
+        return constraints == null || constraints.isEmpty() ? NONE : new ConstraintPlan(List.copyOf(constraints));
+    }
+
+    boolean isEmpty() {
+        return constraints.isEmpty();
+    }
+
+    // Every pair that cooccurs at all has a count of at least 1, so 1 means no threshold.
+    int getMinPairCount() {
+        return minPairCount;
+    }
+
+    // The parts that can have results, in DocumentPart order. Empty when the constraints rule out every part.
+    Set<DocumentPart> getDocumentParts() {
+        return documentParts;
+    }
+
+    // Whether any constraint depends on the counts rather than only on the part.
+    boolean hasMetricConstraints() {
+        return metricConstraints;
+    }
+
+    boolean accepts(Metrics metrics, DocumentPart documentPart) {
+        for (AttributeConstraint constraint : constraints) {
+            if (!ConceptPair.meetsConstraint(constraint, metrics, documentPart)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The lower bound a pair count constraint puts on the count. A list of values is met by any of them, so the bound is the lowest of theirs.
+    private static int getMinPairCount(AttributeConstraint constraint) {
+        JsonNode value = constraint.getValue();
+        if (!value.isArray()) {
+            return getMinPairCount(constraint.getOperator(), constraint.isNot(), value);
+        }
+        int min = Integer.MAX_VALUE;
+        for (JsonNode item : value) {
+            min = Math.min(min, getMinPairCount(constraint.getOperator(), constraint.isNot(), item));
+        }
+        return min == Integer.MAX_VALUE ? 1 : min;
+    }
+
+    // Counts are whole numbers: "> 9.5" and "== 10" both mean at least 10, as does "not < 10". Other operators set no lower bound.
+    private static int getMinPairCount(String operator, boolean not, JsonNode value) {
+        if (!value.isNumber()) {
+            return 1;
+        }
+        double threshold = value.asDouble();
+        double min;
+        if (!not && ">".equals(operator)) {
+            min = Math.floor(threshold) + 1;
+        } else if ((!not && "==".equals(operator)) || (not && "<".equals(operator))) {
+            min = Math.ceil(threshold);
+        } else {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(min, Integer.MAX_VALUE));
+    }
+}
@@ -2,10 +2,12 @@ package edu.ucdenver.ccp.cooccurrence;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.EnableCaching;
 
 @SpringBootApplication
 @EnableCaching
+@EnableConfigurationProperties(NodeNormalizerProperties.class)
 public class CooccurrenceApplication {
 
 	public static void main(String[] args) {
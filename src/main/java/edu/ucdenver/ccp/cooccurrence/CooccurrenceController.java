@@ -1,5 +1,6 @@
 package edu.ucdenver.ccp.cooccurrence;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -9,16 +10,28 @@ import com.networknt.schema.ValidationMessage;
 import edu.ucdenver.ccp.cooccurrence.TRAPI.*;
 import edu.ucdenver.ccp.cooccurrence.entities.*;
 import org.apache.commons.lang3.StringUtils;
+import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 @RestController
@@ -27,30 +40,45 @@ public class CooccurrenceController {
     public static Logger logger = LoggerFactory.getLogger(CooccurrenceController.class);
 
     @Autowired
-    private CacheManager cacheManager;
+    private LookupCacheManager cacheManager;
+    @Autowired
+    @Qualifier("lookupStageExecutor")
+    private ExecutorService stageExecutor;
+    @Value("${lookup.request-budget:30s}")
+    private Duration requestBudget;
+    // When set, pair counts include the cooccurrences of every descendant of the queried concepts (see HierarchyRollup).
+    @Value("${lookup.hierarchy-rollup:false}")
+    private boolean hierarchyRollup;
+    // The number of results kept per query edge when a request doesn't say (0 for all of them), and how they are ranked to pick them.
+    @Value("${lookup.max-results:0}")
+    private int defaultMaxResults;
+    @Value("${lookup.rank-by:ngd}")
+    private String defaultRankBy;
+    // Whether edges carry a biolink:publications attribute when a request doesn't say. Without it, only document counts are read.
+    @Value("${lookup.include-publications:true}")
+    private boolean defaultIncludePublications;
     private final NodeRepository nodeRepo;
     private final ObjectMapper objectMapper;
     private final LookupRepository lookupQueries;
     private final NodeNormalizerService sri;
-    public static final List<String> documentParts = List.of("abstract", "title", "sentence", "article");
-    private static final Map<String, Integer> documentPartCounts = new HashMap<>();
+    // Indexed by DocumentPart ordinal.
+    private static volatile int[] documentPartCounts = new int[DocumentPart.COUNT];
 
     private static final List<String> supportedPredicates = List.of("biolink:related_to", "biolink:related_to_at_instance_level", "biolink:associated_with",
             "biolink:correlated_with", "biolink:occurs_together_in_literature_with");
-    private Map<String, Integer> conceptCounts;
+    private int[] conceptCounts;
     private List<String> invalidClasses;
 
-    private final int NN_BATCH_SIZE = 1000;
-
     public CooccurrenceController(NodeRepository repo, LookupRepository impl, NodeNormalizerService sri) {
         this.nodeRepo = repo;
-        this.objectMapper = new ObjectMapper();
+        this.objectMapper = Json.MAPPER;
         this.lookupQueries = impl;
         this.sri = sri;
         conceptCounts = lookupQueries.getConceptCounts();
-        for (String part : documentParts) {
-            documentPartCounts.put(part, nodeRepo.getDocumentCount(part));
-        }
+        documentPartCounts = getDocumentPartCounts(nodeRepo);
+        lookupQueries.refreshNodeDictionary();
+        lookupQueries.refreshCooccurrenceIndexes();
+        lookupQueries.refreshDocumentBitmapIndex();
         invalidClasses = BiolinkService.getClasses(BiolinkService.getBiolinkNode());
     }
 
@@ -67,45 +95,63 @@ public class CooccurrenceController {
     public JsonNode getRefresh() {
         invalidClasses = BiolinkService.getClasses(BiolinkService.getBiolinkNode());
         conceptCounts = lookupQueries.getConceptCounts();
-        for (String part : documentParts) {
-            documentPartCounts.put(part, nodeRepo.getDocumentCount(part));
-        }
+        documentPartCounts = getDocumentPartCounts(nodeRepo);
+        NodeDictionary nodeDictionary = lookupQueries.refreshNodeDictionary();
+        Map<DocumentPart, CooccurrenceIndex> cooccurrenceIndexes = lookupQueries.refreshCooccurrenceIndexes();
+        lookupQueries.refreshDocumentBitmapIndex();
         ObjectNode responseNode = objectMapper.createObjectNode();
-        responseNode.set("concepts", objectMapper.valueToTree(conceptCounts));
-        responseNode.set("documents", objectMapper.valueToTree(documentPartCounts));
+        responseNode.put("nodes", nodeDictionary.size());
+        ArrayNode indexedParts = responseNode.putArray("indexed_parts");
+        cooccurrenceIndexes.keySet().forEach(part -> indexedParts.add(part.getName()));
+        responseNode.set("concepts", toPartCountsNode(conceptCounts));
+        responseNode.set("documents", toPartCountsNode(documentPartCounts));
         return responseNode;
     }
 
+    private static int[] getDocumentPartCounts(NodeRepository nodeRepo) {
+        int[] counts = new int[DocumentPart.COUNT];
+        for (DocumentPart part : DocumentPart.values()) {
+            counts[part.ordinal()] = nodeRepo.getDocumentCount(part.getName());
+        }
+        return counts;
+    }
+
+    private ObjectNode toPartCountsNode(int[] counts) {
+        ObjectNode countsNode = objectMapper.createObjectNode();
+        for (DocumentPart part : DocumentPart.values()) {
+            countsNode.put(part.getName(), counts[part.ordinal()]);
+        }
+        return countsNode;
+    }
+
+    // Per-region counters only; entry contents are never read, so this is cheap on a warm cache.
     @GetMapping("/cache")
-    public JsonNode getCacheSize() {
-        Collection<String> names = cacheManager.getCacheNames();
-        HashMap<String, Integer> cacheSizes = new HashMap<>(names.size());
+    public JsonNode getCacheStatistics() {
+        ObjectNode responseNode = objectMapper.createObjectNode();
+        List<String> names = new ArrayList<>(cacheManager.getCacheNames());
+        Collections.sort(names);
         for (String name : names) {
-            Cache cache = cacheManager.getCache(name);
-            if (cache != null) {
-                ConcurrentMap<Object, Object> map = (ConcurrentMap<Object, Object>) cache.getNativeCache();
-                StringBuilder builder = new StringBuilder();
-                for (Map.Entry<Object, Object> entry : map.entrySet()) {
-                    builder.append(entry.getKey());
-                    builder.append(':');
-                    builder.append(entry.getValue());
-                    builder.append('\n');
-                }
-                logger.debug(name + " ::: " + builder.toString().length());
-                cacheSizes.put(name, builder.toString().length());
+            Map<String, Object> statistics = cacheManager.getStatistics(name);
+            if (statistics != null) {
+                responseNode.set(name, objectMapper.valueToTree(statistics));
             }
         }
-        return objectMapper.valueToTree(cacheSizes);
+        return responseNode;
+    }
+
+    @GetMapping("/node_normalizer")
+    public JsonNode getNodeNormalizerStatistics() {
+        return objectMapper.valueToTree(sri.getStatistics());
     }
 
     @PostMapping("/query")
-    public ResponseEntity<JsonNode> lookup(@RequestBody JsonNode requestNode) {
+    public ResponseEntity<StreamingResponseBody> lookup(@RequestBody JsonNode requestNode) {
         long startTime = System.currentTimeMillis();
         if (!requestNode.hasNonNull("message")) {
             ObjectNode errorNode = objectMapper.createObjectNode();
             errorNode.put("error", "No message in request");
             logger.warn("Lookup request with no message");
-            return ResponseEntity.badRequest().body(errorNode);
+            return jsonResponse(ResponseEntity.badRequest(), errorNode);
         }
         JsonNode messageNode = requestNode.get("message");
         Validator validator = new Validator();
@@ -113,7 +159,7 @@ public class CooccurrenceController {
         if (errors.size() > 0) {
             logger.warn("Lookup message failed validation");
             logger.debug(StringUtils.join(errors, "|"));
-            return ResponseEntity.unprocessableEntity().body(objectMapper.convertValue(errors, ArrayNode.class));
+            return jsonResponse(ResponseEntity.unprocessableEntity(), objectMapper.convertValue(errors, ArrayNode.class));
         }
         // TRAPI specs allow several named properties as well as additional properties, but we only care about "message" so the rest just get passed along.
         // TODO: make use of the log_level property
@@ -136,56 +182,101 @@ public class CooccurrenceController {
             ObjectNode errorNode = objectMapper.createObjectNode();
             errorNode.put("errorCode", "UnsupportedConstraint");
             errorNode.set("constraints", objectMapper.convertValue(unsupportedConstraints.stream().map(AttributeConstraint::getId).collect(Collectors.toList()), ArrayNode.class));
-            return ResponseEntity.badRequest().body(errorNode);
+            return jsonResponse(ResponseEntity.badRequest(), errorNode);
+        }
+        // Optional result limit, as top level "max_results" and "rank_by" properties of the request.
+        int maxResults = requestNode.path("max_results").asInt(defaultMaxResults);
+        String rankBy = requestNode.path("rank_by").asText(defaultRankBy);
+        ResultRanking ranking = ResultRanking.fromName(rankBy);
+        if (maxResults < 0 || (requestNode.has("max_results") && !requestNode.get("max_results").canConvertToInt())) {
+            ObjectNode errorNode = objectMapper.createObjectNode();
+            errorNode.put("errorCode", "InvalidMaxResults");
+            errorNode.set("max_results", requestNode.get("max_results"));
+            return jsonResponse(ResponseEntity.badRequest(), errorNode);
+        }
+        if (ranking == null) {
+            ObjectNode errorNode = objectMapper.createObjectNode();
+            errorNode.put("errorCode", "UnsupportedRanking");
+            errorNode.put("rank_by", rankBy);
+            return jsonResponse(ResponseEntity.badRequest(), errorNode);
+        }
+        // Optional top level "include_publications"; false reads document counts only.
+        boolean includePublications = requestNode.path("include_publications").asBoolean(defaultIncludePublications);
+        if (requestNode.has("include_publications") && !requestNode.get("include_publications").isBoolean()) {
+            ObjectNode errorNode = objectMapper.createObjectNode();
+            errorNode.put("errorCode", "InvalidIncludePublications");
+            errorNode.set("include_publications", requestNode.get("include_publications"));
+            return jsonResponse(ResponseEntity.badRequest(), errorNode);
         }
 
         logger.info(String.format("Starting lookup with %d edges and %d nodes", queryGraph.getEdges().size(), queryGraph.getNodes().size()));
-        List<ConceptPair> initialPairs = getConceptPairs(queryGraph); // This is the actual query portion.
-        Map<String, QueryEdge> edgeMap = queryGraph.getEdges();
+        // Each edge is looked up and enriched in its own stage chain (see lookupEdge), so the edges' database work and Node Normalizer
+        // requests overlap instead of running one after another.
+        List<CompletableFuture<EdgeLookup>> edgeLookups = new ArrayList<>();
+        for (Map.Entry<String, QueryEdge> edgeEntry : queryGraph.getEdges().entrySet()) {
+            edgeLookups.add(lookupEdge(edgeEntry.getKey(), edgeEntry.getValue(), queryGraph.getNodes(), startTime, maxResults, ranking,
+                    includePublications));
+        }
         List<ConceptPair> conceptPairs = new ArrayList<>();
-        // Remove partial results that do not satisfy attribute constraints, if any
-        for (ConceptPair pair : initialPairs) {
-            QueryEdge edge = edgeMap.get(pair.getEdgeKey());
-            if (edge.getAttributeConstraints().size() > 0) {
-                ConceptPair constrainedConceptPair = pair;
-                for (AttributeConstraint constraint : edge.getAttributeConstraints()) {
-                    constrainedConceptPair = constrainedConceptPair.satisfyConstraint(constraint);
-                    if (constrainedConceptPair == null) {
-                        break;
-                    }
-                }
-                if (constrainedConceptPair != null) {
-                    conceptPairs.add(constrainedConceptPair);
-                }
-            } else {
-                conceptPairs.add(pair);
-            }
+        Map<String, List<String>> categoryMap = new HashMap<>();
+        Map<String, String> labelMap = new HashMap<>();
+        ObjectNode normalizedNodes = objectMapper.createObjectNode();
+        for (EdgeLookup edgeLookup : joinAll(edgeLookups)) {
+            conceptPairs.addAll(edgeLookup.conceptPairs);
+            edgeLookup.categoryMap.forEach(categoryMap::putIfAbsent);
+            labelMap.putAll(edgeLookup.labelMap);
+            normalizedNodes.setAll(edgeLookup.normalizedNodes);
         }
-        List<String> curies = conceptPairs.stream()
-                .map(cp -> List.of(cp.getSubject(), cp.getObject()))
-                .flatMap(List::stream)
-                .collect(Collectors.toList());
-        JsonNode normalizedNodes = sri.getNormalizedNodesInBatches(curies, NN_BATCH_SIZE);
-        Map<String, List<String>> categoryMap = lookupQueries.getCategoriesForCuries(curies);
-        Map<String, String> labelMap = lookupQueries.getLabels(curies);
 
         KnowledgeGraph knowledgeGraph = buildKnowledgeGraph(conceptPairs, labelMap, categoryMap, normalizedNodes); // Equivalent to a fill operation.
-        List<Result> resultsList = bindGraphs(queryGraph, knowledgeGraph); // Almost an atomic bind operation
 //        List<Result> completedResults = completeResults(resultsList); // Atomic complete_results operation
 
-        // With all the information in place, we just pack it up into JSON to respond.
-        ObjectNode responseMessageNode = objectMapper.createObjectNode();
-        responseMessageNode.set("query_graph", queryGraph.toJSON());
-        responseMessageNode.set("knowledge_graph", knowledgeGraph.toJSON());
-        List<JsonNode> jsonResults = resultsList.stream().map(Result::toJSON).collect(Collectors.toList());
-        responseMessageNode.set("results", objectMapper.convertValue(jsonResults, ArrayNode.class));
+        // With all the information in place, we just write it out as JSON, with a generator rather than through one JSON tree. Each result is
+        // bound from its edge just before it is written (see bindEdge), so no list of results is held. The knowledge graph itself is built
+        // before anything is written: its nodes come first and pairs are ranked against max_results, so neither can be known any earlier.
+        // The first byte thus still waits for the whole lookup, and a response's heap grows with its knowledge graph.
+        JsonNode queryGraphNode = queryGraph.toJSON();
         logger.info("Lookup completed in " + (System.currentTimeMillis() - startTime) + "ms");
-        ObjectNode responseNode = objectMapper.createObjectNode();
-        responseNode.set("message", responseMessageNode);
-        for (Map.Entry<String, JsonNode> attribute : otherAttributes.entrySet()) {
-            responseNode.set(attribute.getKey(), attribute.getValue());
-        }
-        return ResponseEntity.ok(responseNode);
+        return streamJson(ResponseEntity.ok(), generator -> {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("message");
+            generator.writeFieldName("query_graph");
+            generator.writeTree(queryGraphNode);
+            generator.writeFieldName("knowledge_graph");
+            knowledgeGraph.writeJSON(generator);
+            generator.writeArrayFieldStart("results");
+            for (Map.Entry<String, KnowledgeEdge> edgeEntry : knowledgeGraph.getEdges().entrySet()) {
+                bindEdge(queryGraph, knowledgeGraph, edgeEntry).writeJSON(generator);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            for (Map.Entry<String, JsonNode> attribute : otherAttributes.entrySet()) {
+                generator.writeFieldName(attribute.getKey());
+                generator.writeTree(attribute.getValue());
+            }
+            generator.writeEndObject();
+            logger.debug("Response written in " + (System.currentTimeMillis() - startTime) + "ms");
+        });
+    }
+
+    interface JsonWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    // The response is written on the MVC async executor (the bounded responseWriterExecutor, see LookupExecutorConfiguration) once the
+    // handler returns. The servlet stream is left open for Spring to finish.
+    private ResponseEntity<StreamingResponseBody> streamJson(ResponseEntity.BodyBuilder response, JsonWriter writer) {
+        return response.contentType(MediaType.APPLICATION_JSON).body(outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                writer.write(generator);
+            }
+        });
+    }
+
+    // Error responses are small, so they are written from their tree.
+    private ResponseEntity<StreamingResponseBody> jsonResponse(ResponseEntity.BodyBuilder response, JsonNode body) {
+        return streamJson(response, generator -> generator.writeTree(body));
     }
 
 
@@ -340,7 +431,7 @@ public class CooccurrenceController {
             logger.debug("Checking concept pair (" + s + ", " + o + ")");
             ConceptPair conceptPair = new ConceptPair(s, o);
             boolean hasMetrics = false;
-            for (String part : documentParts) {
+            for (DocumentPart part : DocumentPart.values()) {
                 Metrics cooccurrenceMetrics = getMetrics(s, o, part);
                 if (cooccurrenceMetrics.getPairCount() != 0 && !Double.isNaN(cooccurrenceMetrics.getNormalizedGoogleDistance())) {
                     conceptPair.setPairMetrics(part, cooccurrenceMetrics);
@@ -393,44 +484,41 @@ public class CooccurrenceController {
     // region: Operations
 
     // TODO: find a way to bind the graphs without relying on the QueryKey hints.
-    private List<Result> bindGraphs(QueryGraph qGraph, KnowledgeGraph kGraph) {
-        List<Result> results = new ArrayList<>();
+    // Binds one knowledge graph edge, which makes one result; lookup writes each as soon as it is bound.
+    private Result bindEdge(QueryGraph qGraph, KnowledgeGraph kGraph, Map.Entry<String, KnowledgeEdge> edgeEntry) {
         Map<String, QueryEdge> queryEdgeMap = qGraph.getEdges();
         Map<String, QueryNode> queryNodeMap = qGraph.getNodes();
         Map<String, KnowledgeNode> knowledgeNodeMap = kGraph.getNodes();
-        for (Map.Entry<String, KnowledgeEdge> edgeEntry : kGraph.getEdges().entrySet()) {
-            Result result = new Result();
-            Analysis analysis = new Analysis();
-            analysis.setResourceId("infores:text-mining-provider-cooccurrence");
-            String queryGraphEdgeLabel = edgeEntry.getValue().getQueryKey();
-            String knowledgeGraphEdgeLabel = edgeEntry.getKey();
-            EdgeBinding edgeBinding = new EdgeBinding();
-            edgeBinding.setId(knowledgeGraphEdgeLabel);
-            if (queryEdgeMap.containsKey(queryGraphEdgeLabel)) {
-                analysis.addEdgeBinding(queryGraphEdgeLabel, edgeBinding);
-                result.addAnalysis(analysis);
-            }
-
-            String knowledgeGraphSubjectLabel = edgeEntry.getValue().getSubject();
-            KnowledgeNode subject = knowledgeNodeMap.get(knowledgeGraphSubjectLabel);
-            String queryGraphSubjectLabel = subject.getQueryKey();
-            NodeBinding subjectNodeBinding = new NodeBinding();
-            subjectNodeBinding.setId(knowledgeGraphSubjectLabel);
-            if (queryNodeMap.containsKey(queryGraphSubjectLabel)) {
-                result.addNodeBinding(queryGraphSubjectLabel, subjectNodeBinding);
-            }
-
-            String knowledgeGraphObjectLabel = edgeEntry.getValue().getObject();
-            KnowledgeNode object = knowledgeNodeMap.get(knowledgeGraphObjectLabel);
-            String queryGraphObjectLabel = object.getQueryKey();
-            NodeBinding objectNodeBinding = new NodeBinding();
-            objectNodeBinding.setId(knowledgeGraphObjectLabel);
-            if (queryNodeMap.containsKey(queryGraphObjectLabel)) {
-                result.addNodeBinding(queryGraphObjectLabel, objectNodeBinding);
-            }
-            results.add(result);
-        }
-        return results;
+        Result result = new Result();
+        Analysis analysis = new Analysis();
+        analysis.setResourceId("infores:text-mining-provider-cooccurrence");
+        String queryGraphEdgeLabel = edgeEntry.getValue().getQueryKey();
+        String knowledgeGraphEdgeLabel = edgeEntry.getKey();
+        EdgeBinding edgeBinding = new EdgeBinding();
+        edgeBinding.setId(knowledgeGraphEdgeLabel);
+        if (queryEdgeMap.containsKey(queryGraphEdgeLabel)) {
+            analysis.addEdgeBinding(queryGraphEdgeLabel, edgeBinding);
+            result.addAnalysis(analysis);
+        }
+
+        String knowledgeGraphSubjectLabel = edgeEntry.getValue().getSubject();
+        KnowledgeNode subject = knowledgeNodeMap.get(knowledgeGraphSubjectLabel);
+        String queryGraphSubjectLabel = subject.getQueryKey();
+        NodeBinding subjectNodeBinding = new NodeBinding();
+        subjectNodeBinding.setId(knowledgeGraphSubjectLabel);
+        if (queryNodeMap.containsKey(queryGraphSubjectLabel)) {
+            result.addNodeBinding(queryGraphSubjectLabel, subjectNodeBinding);
+        }
+
+        String knowledgeGraphObjectLabel = edgeEntry.getValue().getObject();
+        KnowledgeNode object = knowledgeNodeMap.get(knowledgeGraphObjectLabel);
+        String queryGraphObjectLabel = object.getQueryKey();
+        NodeBinding objectNodeBinding = new NodeBinding();
+        objectNodeBinding.setId(knowledgeGraphObjectLabel);
+        if (queryNodeMap.containsKey(queryGraphObjectLabel)) {
+            result.addNodeBinding(queryGraphObjectLabel, objectNodeBinding);
+        }
+        return result;
     }
 
 /*
@@ -482,20 +570,23 @@ public class CooccurrenceController {
 
     //region Just Overlay Stuff
 
-    private Metrics getMetrics(String concept1, String concept2, String part) {
+    private Metrics getMetrics(String concept1, String concept2, DocumentPart part) {
         int singleCount1, singleCount2, pairCount, totalConceptCount, totalDocumentCount;
         totalConceptCount = nodeRepo.getTotalConceptCount();
-        totalDocumentCount = nodeRepo.getDocumentCount(part);
-        Map<String, Map<String, Integer>> singleCountsMap = lookupQueries.getSingleCounts(List.of(concept1, concept2));
-        singleCount1 = singleCountsMap.getOrDefault(concept1, Collections.emptyMap()).getOrDefault(part, 0);
-        singleCount2 = singleCountsMap.getOrDefault(concept2, Collections.emptyMap()).getOrDefault(part, 0);
+        totalDocumentCount = nodeRepo.getDocumentCount(part.getName());
+        Map<String, int[]> singleCountsMap = lookupQueries.getSingleCounts(List.of(concept1, concept2));
+        singleCount1 = getCount(singleCountsMap.get(concept1), part.ordinal());
+        singleCount2 = getCount(singleCountsMap.get(concept2), part.ordinal());
         // TODO: Make a single concept pair version of getCooccurrences
-        Map<String, List<String>> cooccurrences = lookupQueries.getPairCounts(Collections.singletonList(concept1), Collections.singletonList(concept2));
-        List<String> documents = cooccurrences.getOrDefault(concept1 + concept2 + part, Collections.emptyList());
+        PairTable<List<String>> cooccurrences = lookupQueries.getPairCounts(Collections.singletonList(concept1), Collections.singletonList(concept2));
+        List<String> documents = cooccurrences.get(concept1, concept2, part);
+        if (documents == null) {
+            documents = Collections.emptyList();
+        }
         pairCount = documents.size();
         Metrics metrics = new Metrics(singleCount1, singleCount2, pairCount, totalConceptCount, totalDocumentCount, part);
         if (pairCount > 0) {
-            metrics.setDocumentIdList(documents.stream().map(hash -> hash.split("_")[0]).collect(Collectors.toList()));
+            metrics.setDocumentIdList(getDocumentIds(documents));
         }
         return metrics;
     }
@@ -608,24 +699,72 @@ public class CooccurrenceController {
         return kg;
     }
 
-    private List<ConceptPair> getConceptPairs(QueryGraph graph) {
-        List<ConceptPair> conceptPairs = new ArrayList<>();
-        Map<String, QueryNode> nodeMap = graph.getNodes();
-        Map<String, QueryEdge> edgeMap = graph.getEdges();
-        for (Map.Entry<String, QueryEdge> edgeEntry : edgeMap.entrySet()) {
-            String edgeKey = edgeEntry.getKey();
-            conceptPairs.addAll(getConceptPairsForEdge(edgeKey, edgeEntry.getValue(), nodeMap));
+    // The stages for one query edge: find its pairs that meet its attribute constraints (see ConstraintPlan), keeping only the best
+    // maxResults of them when there is a limit (see ConceptPairCollector), then read labels and categories
+    // for the pairs' curies from the local tables, then ask the Node Normalizer about the curies they leave without one (buildKnowledgeGraph
+    // only falls back to it for those). The database stages run on the lookupStageExecutor, or on the request thread when it has no
+    // thread free (see LookupExecutorConfiguration); the Node Normalizer request holds no thread and
+    // gets whatever is left of the request budget, so a slow Node Normalizer costs labels rather than time.
+    private CompletableFuture<EdgeLookup> lookupEdge(String edgeKey, QueryEdge edge, Map<String, QueryNode> nodeMap, long startTime,
+                                                     int maxResults, ResultRanking ranking, boolean includePublications) {
+        return CompletableFuture
+                .supplyAsync(() -> getConceptPairsForEdge(edgeKey, edge, nodeMap, new ConceptPairCollector(maxResults, ranking), includePublications),
+                        stageExecutor)
+                .thenCompose(conceptPairs -> {
+                    List<String> curies = conceptPairs.stream()
+                            .map(cp -> List.of(cp.getSubject(), cp.getObject()))
+                            .flatMap(List::stream)
+                            .distinct()
+                            .collect(Collectors.toList());
+                    Map<String, List<String>> categoryMap = lookupQueries.getCategoriesForCuries(curies);
+                    Map<String, String> labelMap = lookupQueries.getLabels(curies);
+                    List<String> unresolvedCuries = curies.stream()
+                            .filter(curie -> labelMap.getOrDefault(curie, "").isEmpty() || categoryMap.getOrDefault(curie, Collections.emptyList()).isEmpty())
+                            .collect(Collectors.toList());
+                    logger.debug(String.format("Edge %s: %d of %d nodes need the Node Normalizer", edgeKey, unresolvedCuries.size(), curies.size()));
+                    Duration remainingBudget = requestBudget.minusMillis(System.currentTimeMillis() - startTime);
+                    return sri.normalizeNodes(unresolvedCuries, remainingBudget).toFuture()
+                            .thenApply(normalizedNodes -> new EdgeLookup(conceptPairs, labelMap, categoryMap, normalizedNodes));
+                });
+    }
+
+    // Waits for every stage and returns the results in order. A failure is rethrown as the exception the stage itself threw.
+    private static <T> List<T> joinAll(List<CompletableFuture<T>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException cex) {
+            if (cex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) cex.getCause();
+            }
+            throw new IllegalStateException("Lookup failed", cex.getCause());
         }
-        return conceptPairs;
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
     }
 
+    private static final class EdgeLookup {
+        private final List<ConceptPair> conceptPairs;
+        private final Map<String, String> labelMap;
+        private final Map<String, List<String>> categoryMap;
+        private final ObjectNode normalizedNodes;
+
+        private EdgeLookup(List<ConceptPair> conceptPairs, Map<String, String> labelMap, Map<String, List<String>> categoryMap, ObjectNode normalizedNodes) {
+            this.conceptPairs = conceptPairs;
+            this.labelMap = labelMap;
+            this.categoryMap = categoryMap;
+            this.normalizedNodes = normalizedNodes;
+        }
+    }
 
     // The specifications allow for lists in place of either curie or category, but category list is
     // rather difficult to implement at the moment. Since the curies belonging to a category can overlap
     // with other categories, and the document lists can also overlap, getting the single count for a node
     // defined by a list of categories is not straightforward.
-    private List<ConceptPair> getConceptPairsForEdge(String edgeKey, QueryEdge edge, Map<String, QueryNode> nodeMap) {
-        List<ConceptPair> conceptPairs = new ArrayList<>();
+    // Publications are only ever needed for the pairs that are kept. Under a limit, most pairs are discarded, so the SQL path reads document
+    // counts only and the publications of the kept pairs are read afterwards, in one query (see addPublications).
+    private List<ConceptPair> getConceptPairsForEdge(String edgeKey, QueryEdge edge, Map<String, QueryNode> nodeMap, ConceptPairCollector collector,
+                                                     boolean includePublications) {
+        ConstraintPlan constraints = ConstraintPlan.of(edge.getAttributeConstraints());
+        boolean publicationsPending = false;
         for (String predicate : edge.getPredicates()) {
             if (supportedPredicates.contains(predicate) || predicate.isBlank()) {
                 String subjectKey = edge.getSubject();
@@ -641,27 +780,36 @@ public class CooccurrenceController {
                     objectCategory = objectNode.getCategories().get(0); // Getting only the top category on the assumption that it's the most specific one.
                 }
                 logger.debug(String.format("Lookup: (%s, %s, %s)\n", subjectNode.toJSON().toString(), predicate, objectNode.toJSON().toString()));
-                List<ConceptPair> pairs = findConceptPairs(subjectNode.getIds(), subjectCategory, objectNode.getIds(), objectCategory);
-                pairs.forEach(x -> x.setKeys(subjectKey, objectKey, edgeKey));
-                conceptPairs.addAll(pairs);
+                publicationsPending |= findConceptPairs(subjectNode.getIds(), subjectCategory, objectNode.getIds(), objectCategory, constraints,
+                        includePublications, collector);
             }
         }
+        List<ConceptPair> conceptPairs = collector.getPairs();
+        if (publicationsPending) {
+            addPublications(conceptPairs);
+        }
+        conceptPairs.forEach(x -> x.setKeys(edge.getSubject(), edge.getObject(), edgeKey));
+        logger.debug(String.format("Edge %s: kept %d of %d pairs", edgeKey, conceptPairs.size(), collector.getCandidateCount()));
         return conceptPairs;
     }
 
     // This method is necessarily complex because category based queries tend to have very large top level concept lists.
     // The query in getHierarchicalCounts goes very slowly with such large numbers, so we only use that method for concepts with descendants.
     // For the concepts with no descendants (which is the majority) we use the simpler and faster getSingleCounts query.
-    private List<ConceptPair> findConceptPairs(List<String> subjectCurieList, String subjectCategory, List<String> objectCurieList, String objectCategory) {
+    // Returns whether the pairs were read as document counts only while publications are wanted, so the kept ones still need them.
+    private boolean findConceptPairs(List<String> subjectCurieList, String subjectCategory, List<String> objectCurieList, String objectCategory,
+                                     ConstraintPlan constraints, boolean includePublications, ConceptPairCollector conceptPairs) {
         long t0 = System.currentTimeMillis();
         if ((subjectCurieList == null || subjectCurieList.isEmpty()) && (subjectCategory == null || subjectCategory.isBlank())
                 && (objectCurieList == null || objectCurieList.isEmpty()) && (objectCategory == null || objectCategory.isBlank())) {
-            return Collections.emptyList();
+            return false;
+        }
+        if (constraints.getDocumentParts().isEmpty()) {
+            return false;
         }
-        List<ConceptPair> conceptPairs = new ArrayList<>();
         boolean subjectCategoryQuery = subjectCurieList == null || subjectCurieList.isEmpty();
         boolean objectCategoryQuery = objectCurieList == null || objectCurieList.isEmpty();
-        Map<String, Map<String, Integer>> subjectHierarchyCounts, objectHierarchyCounts;
+        Map<String, int[]> subjectHierarchyCounts, objectHierarchyCounts;
         List<String> subjectCuries;
         List<String> objectCuries;
         if (subjectCategoryQuery) {
@@ -678,8 +826,8 @@ public class CooccurrenceController {
         long t1 = System.currentTimeMillis();
         logger.debug("Curies retrieved in " + (t1 - t0) + "ms");
 
-        Map<String, Map<String, Integer>> topLevelSubjectCounts = lookupQueries.getSingleCounts(subjectCuries);
-        Map<String, Map<String, Integer>> topLevelObjectCounts = lookupQueries.getSingleCounts(objectCuries);
+        Map<String, int[]> topLevelSubjectCounts = lookupQueries.getSingleCounts(subjectCuries);
+        Map<String, int[]> topLevelObjectCounts = lookupQueries.getSingleCounts(objectCuries);
 
         long t2 = System.currentTimeMillis();
         logger.debug("Single counts retrieved in " + (t2 - t1) + "ms");
@@ -690,57 +838,224 @@ public class CooccurrenceController {
         long t3 = System.currentTimeMillis();
         logger.debug("Hierarchies retrieved in " + (t3 - t2) + "ms");
 
-        Map<String, List<String>> cooccurrences = getPairCounts(subjectHierarchy, objectHierarchy);
-        Map<String, Integer> pairCounts = new HashMap<>();
-        for (Map.Entry<String, List<String>> pairList : cooccurrences.entrySet()) {
-            pairCounts.put(pairList.getKey(), pairList.getValue().size());
-        }
-
-        long t4 = System.currentTimeMillis();
-        logger.debug("Pair counts retrieved in " + (t4 - t3) + "ms");
-
+        // The total counts come before the pairs so that a constrained lookup can test its pairs' metrics before reading their documents.
         subjectHierarchyCounts = lookupQueries.getHierchicalCounts(subjectCuries);
         objectHierarchyCounts = lookupQueries.getHierchicalCounts(objectCuries);
+        Map<String, int[]> subjectCounts = getTotalCounts(subjectHierarchyCounts, topLevelSubjectCounts);
+        Map<String, int[]> objectCounts = getTotalCounts(objectHierarchyCounts, topLevelObjectCounts);
+
+        long t4 = System.currentTimeMillis();
+        logger.debug("Hierarchical counts retrieved in " + (t4 - t3) + "ms");
+
+        // With document bitmaps loaded, a pair count is the cardinality of the pair's bitmap and document ids are
+        // only looked up for the metrics that get written out. Otherwise every document hash of every pair is read and counted.
+        // With the hierarchy roll-up on, the cooccurrences of all the descendants are looked up and unioned into the queried concepts' pairs,
+        // as document bitmaps either way; the document hashes of the SQL path are numbered for that by documentHashIds.
+        // Attribute constraints are applied as early as each path allows: only the parts they allow are read at all, the minimum pair count
+        // is applied while pairs are read (not under a roll-up, where it only applies to the unioned documents), and on the SQL path the
+        // metrics of each pair are tested on its document count before any of its document hashes are read (see getConstrainedCooccurrences).
+        // Whatever is left is tested again in joinPairs.
+        // Without publications, or under a limit on the SQL path, pairs are read as document counts (COUNT(DISTINCT document_hash), or the
+        // bitmap cardinalities) instead of as documents. The roll-up needs the documents themselves to union them, so it always reads them.
+        DocumentBitmapIndex documentBitmaps = lookupQueries.getDocumentBitmapIndex();
+        PairTable<RoaringBitmap> pairDocuments = null;
+        PairTable<List<String>> cooccurrences = null;
+        PairTable<Integer> pairCounts = null;
+        HierarchyRollup.DocumentIds documentHashIds = null;
+        boolean publicationsPending = false;
+        if (hierarchyRollup) {
+            Map<String, List<String>> subjects = HierarchyRollup.getHierarchy(subjectCuries, subjectHierarchy);
+            Map<String, List<String>> objects = HierarchyRollup.getHierarchy(objectCuries, objectHierarchy);
+            List<String> subjectConcepts = HierarchyRollup.getConcepts(subjects);
+            List<String> objectConcepts = HierarchyRollup.getConcepts(objects);
+            if (documentBitmaps != null) {
+                pairDocuments = HierarchyRollup.rollUp(lookupQueries.getPairDocumentBitmaps(documentBitmaps, subjectConcepts, objectConcepts,
+                        constraints.getDocumentParts(), 1),
+                        subjects, objects, Function.identity());
+            } else {
+                HierarchyRollup.DocumentIds documentIds = new HierarchyRollup.DocumentIds();
+                pairDocuments = HierarchyRollup.rollUp(lookupQueries.getCooccurrencesByParts(subjectConcepts, objectConcepts, constraints.getDocumentParts()),
+                        subjects, objects, documentIds::toBitmap);
+                documentHashIds = documentIds;
+            }
+            logger.debug(String.format("Rolled (%d, %d) concepts up to %d pairs", subjectConcepts.size(), objectConcepts.size(), pairDocuments.pairCount()));
+        } else if (documentBitmaps != null && !includePublications) {
+            pairCounts = lookupQueries.getPairDocumentBitmapCounts(documentBitmaps, new ArrayList<>(subjectHierarchy.keySet()),
+                    new ArrayList<>(objectHierarchy.keySet()), constraints.getDocumentParts(), constraints.getMinPairCount());
+        } else if (documentBitmaps != null) {
+            pairDocuments = lookupQueries.getPairDocumentBitmaps(documentBitmaps, new ArrayList<>(subjectHierarchy.keySet()), new ArrayList<>(objectHierarchy.keySet()),
+                    constraints.getDocumentParts(), constraints.getMinPairCount());
+        } else if (!includePublications || conceptPairs.isLimited()) {
+            if (constraints.hasMetricConstraints()) {
+                pairCounts = lookupQueries.getPairDocumentCounts(lookupQueries.getCoccurrentNodesByParts(new ArrayList<>(subjectHierarchy.keySet()),
+                        new ArrayList<>(objectHierarchy.keySet()), constraints.getDocumentParts()), constraints.getMinPairCount());
+            } else {
+                pairCounts = lookupQueries.getCooccurrenceCountsByParts(new ArrayList<>(subjectHierarchy.keySet()), new ArrayList<>(objectHierarchy.keySet()),
+                        constraints.getDocumentParts());
+            }
+            publicationsPending = includePublications;
+        } else if (constraints.hasMetricConstraints()) {
+            cooccurrences = getConstrainedCooccurrences(new ArrayList<>(subjectHierarchy.keySet()), new ArrayList<>(objectHierarchy.keySet()), constraints,
+                    subjectCounts, objectCounts);
+        } else {
+            cooccurrences = lookupQueries.getCooccurrencesByParts(new ArrayList<>(subjectHierarchy.keySet()), new ArrayList<>(objectHierarchy.keySet()),
+                    constraints.getDocumentParts());
+        }
 
         long t5 = System.currentTimeMillis();
-        logger.debug("Hierarchical counts retrieved in " + (t5 - t4) + "ms");
-        for (String sub : subjectCuries) {
-            for (String obj : objectCuries) {
-                ConceptPair pair = new ConceptPair(sub, obj);
-                for (String part : documentParts) {
-                    if (pairCounts.containsKey(sub + obj + part)) {
-                        int pairCount = pairCounts.get(sub + obj + part);
-                        int totalSubjectCount;
-                        if (subjectHierarchyCounts.containsKey(sub) &&
-                                subjectHierarchyCounts.get(sub).containsKey(part) &&
-                                subjectHierarchyCounts.get(sub).get(part) > 0) {
-                            totalSubjectCount = subjectHierarchyCounts.get(sub).get(part);
-                        } else {
-                            totalSubjectCount = topLevelSubjectCounts.getOrDefault(sub, Collections.emptyMap()).getOrDefault(part, 0);
-                        }
-                        int totalObjectCount;
-                        // NB: this implies that if a curie exists in the hierarchy counts but not for that part it should be treated as a single count.
-                        // I'm not totally sure that's true though. I will need to give that a think later. -Edgar
-                        if (objectHierarchyCounts.containsKey(obj) &&
-                                objectHierarchyCounts.get(obj).containsKey(part) &&
-                                objectHierarchyCounts.get(obj).get(part) > 0) {
-                            totalObjectCount = objectHierarchyCounts.get(obj).get(part);
-                        } else {
-                            totalObjectCount = topLevelObjectCounts.getOrDefault(obj, Collections.emptyMap()).getOrDefault(part, 0);
-                        }
-                        if (totalSubjectCount == 0 || totalObjectCount == 0) {
-                            continue;
-                        }
-                        Metrics metrics = new Metrics(totalSubjectCount, totalObjectCount, pairCount, conceptCounts.getOrDefault(part, 0),
-                                documentPartCounts.getOrDefault(part, 0), part);
-                        metrics.setDocumentIdList(cooccurrences.get(sub + obj + part).stream().map(hash -> hash.split("_")[0]).collect(Collectors.toList()));
-                        pair.setPairMetrics(part, metrics);
-                    }
-                    conceptPairs.add(pair);
+        logger.debug("Pair counts retrieved in " + (t5 - t4) + "ms");
+        int pairCount;
+        if (pairCounts != null) {
+            pairCount = joinPairs(pairCounts, Integer::intValue, noDocumentIds(), subjectCounts, objectCounts, conceptCounts, constraints, conceptPairs);
+        } else if (documentHashIds != null) {
+            HierarchyRollup.DocumentIds documentIds = documentHashIds;
+            pairCount = joinPairs(pairDocuments, RoaringBitmap::getCardinality,
+                    includePublications ? (part, documents) -> () -> getDocumentIds(documentIds.toHashes(documents)) : noDocumentIds(),
+                    subjectCounts, objectCounts, conceptCounts, constraints, conceptPairs);
+        } else if (documentBitmaps != null) {
+            pairCount = joinPairs(pairDocuments, RoaringBitmap::getCardinality,
+                    includePublications ? (part, documents) -> () -> documentBitmaps.getDocumentIds(part, documents) : noDocumentIds(),
+                    subjectCounts, objectCounts, conceptCounts, constraints, conceptPairs);
+        } else {
+            pairCount = joinPairs(cooccurrences, List::size, (part, documentHashes) -> () -> getDocumentIds(documentHashes),
+                    subjectCounts, objectCounts, conceptCounts, constraints, conceptPairs);
+        }
+        logger.debug(pairCount + " pairs assembled in " + (System.currentTimeMillis() - t5) + "ms");
+        return publicationsPending;
+    }
+
+    // Reads the document hashes of pairs that were read as counts only, for all of their parts in one query, and gives them to the pairs'
+    // metrics as their publications.
+    private void addPublications(List<ConceptPair> conceptPairs) {
+        NodeDictionary dictionary = lookupQueries.getNodeDictionary();
+        Map<DocumentPart, PairList> pairsByPart = new EnumMap<>(DocumentPart.class);
+        for (ConceptPair pair : conceptPairs) {
+            int subject = dictionary.getId(pair.getSubject());
+            int object = dictionary.getId(pair.getObject());
+            for (DocumentPart part : DocumentPart.values()) {
+                if (pair.getPairMetrics(part) != null) {
+                    pairsByPart.computeIfAbsent(part, p -> new PairList()).add(subject, object);
                 }
             }
         }
-        return conceptPairs;
+        PairTable<List<String>> cooccurrences = lookupQueries.getCooccurrencesByPairs(pairsByPart);
+        for (ConceptPair pair : conceptPairs) {
+            for (DocumentPart part : DocumentPart.values()) {
+                Metrics metrics = pair.getPairMetrics(part);
+                if (metrics != null) {
+                    List<String> documentHashes = cooccurrences.get(pair.getSubject(), pair.getObject(), part);
+                    metrics.setDocumentIdSupplier(() -> documentHashes == null ? Collections.emptyList() : getDocumentIds(documentHashes));
+                }
+            }
+        }
+    }
+
+    // A document hash is the document id, an underscore, and more.
+    static List<String> getDocumentIds(List<String> documentHashes) {
+        List<String> documentIds = new ArrayList<>(documentHashes.size());
+        for (String hash : documentHashes) {
+            int end = hash.indexOf('_');
+            documentIds.add(end < 0 ? hash : hash.substring(0, end));
+        }
+        return documentIds;
+    }
+
+    private static <V> BiFunction<DocumentPart, V, Supplier<List<String>>> noDocumentIds() {
+        return (part, documents) -> Collections::emptyList;
+    }
+
+    // The sparse join: one ConceptPair per (subject, object) that cooccurs in at least one part, with metrics for each part where both
+    // concepts also have a total count. Only the entries of the cooccurrence table are visited, never the full subject x object product,
+    // so the work is proportional to the number of cooccurring pairs however large the two curie lists are.
+    // The count maps hold each concept's total counts by DocumentPart ordinal (see getTotalCounts), so there is one map lookup per concept of
+    // a pair rather than one per part. Parts that fail the constraints are dropped as soon as their metrics exist, so they never get a
+    // document id supplier, and pairs left with no parts are never built. Each pair is handed to conceptPairs as soon as it is complete;
+    // the number of pairs is returned.
+    static <V> int joinPairs(PairTable<V> cooccurrences, ToIntFunction<V> pairCount, BiFunction<DocumentPart, V, Supplier<List<String>>> documentIds,
+                             Map<String, int[]> subjectCounts, Map<String, int[]> objectCounts, int[] conceptCounts, ConstraintPlan constraints,
+                             Consumer<ConceptPair> conceptPairs) {
+        NodeDictionary dictionary = cooccurrences.getDictionary();
+        int pairs = 0;
+        for (int i = 0; i < cooccurrences.pairCount(); i++) {
+            String sub = dictionary.getCurie(cooccurrences.getConcept1(i));
+            String obj = dictionary.getCurie(cooccurrences.getConcept2(i));
+            int[] subjectPartCounts = subjectCounts.get(sub);
+            int[] objectPartCounts = objectCounts.get(obj);
+            if (subjectPartCounts == null || objectPartCounts == null) {
+                continue;
+            }
+            ConceptPair pair = null;
+            for (DocumentPart part : DocumentPart.values()) {
+                V documents = cooccurrences.getValue(i, part.ordinal());
+                if (documents == null) {
+                    continue;
+                }
+                int totalSubjectCount = subjectPartCounts[part.ordinal()];
+                int totalObjectCount = objectPartCounts[part.ordinal()];
+                if (totalSubjectCount == 0 || totalObjectCount == 0) {
+                    continue;
+                }
+                Metrics metrics = new Metrics(totalSubjectCount, totalObjectCount, pairCount.applyAsInt(documents), conceptCounts[part.ordinal()],
+                        documentPartCounts[part.ordinal()], part);
+                if (!constraints.accepts(metrics, part)) {
+                    continue;
+                }
+                metrics.setDocumentIdSupplier(documentIds.apply(part, documents));
+                if (pair == null) {
+                    pair = new ConceptPair(sub, obj);
+                }
+                pair.setPairMetrics(part, metrics);
+            }
+            if (pair != null) {
+                conceptPairs.accept(pair);
+                pairs++;
+            }
+        }
+        return pairs;
+    }
+
+    // The SQL path of a constrained lookup. The cooccurring pairs are found as usual, then only their document counts are read (without
+    // the pairs under the minimum pair count), then the document hashes of the pairs whose metrics meet the constraints. A selective
+    // constraint thus reads the hashes of the few pairs it keeps rather than of every cooccurring pair. Unlike getCooccurrencesByParts this
+    // isn't cached, since what it keeps depends on the constraints.
+    private PairTable<List<String>> getConstrainedCooccurrences(List<String> subjectCuries, List<String> objectCuries, ConstraintPlan constraints,
+                                                                Map<String, int[]> subjectCounts, Map<String, int[]> objectCounts) {
+        Map<DocumentPart, PairList> cooccurrentPairs = lookupQueries.getCoccurrentNodesByParts(subjectCuries, objectCuries, constraints.getDocumentParts());
+        PairTable<Integer> pairCounts = lookupQueries.getPairDocumentCounts(cooccurrentPairs, constraints.getMinPairCount());
+        Map<DocumentPart, PairList> keptPairs = new EnumMap<>(DocumentPart.class);
+        NodeDictionary dictionary = pairCounts.getDictionary();
+        joinPairs(pairCounts, Integer::intValue, (part, count) -> Collections::emptyList, subjectCounts, objectCounts, conceptCounts, constraints, pair -> {
+            int subject = dictionary.getId(pair.getSubject());
+            int object = dictionary.getId(pair.getObject());
+            for (DocumentPart part : DocumentPart.values()) {
+                if (pair.getPairMetrics(part) != null) {
+                    keptPairs.computeIfAbsent(part, p -> new PairList()).add(subject, object);
+                }
+            }
+        });
+        logger.debug(String.format("Constraints kept %d of %d pair counts", keptPairs.values().stream().mapToInt(PairList::size).sum(), pairCounts.size()));
+        return lookupQueries.getCooccurrencesByPairs(keptPairs);
+    }
+
+    // Each concept's count per part: its hierarchical count where it has one, otherwise its single count.
+    // NB: this implies that if a curie exists in the hierarchy counts but not for that part it should be treated as a single count.
+    // I'm not totally sure that's true though. I will need to give that a think later. -Edgar
+    static Map<String, int[]> getTotalCounts(Map<String, int[]> hierarchyCounts, Map<String, int[]> topLevelCounts) {
+        Map<String, int[]> totalCounts = new HashMap<>(topLevelCounts);
+        hierarchyCounts.forEach((curie, counts) -> {
+            int[] topLevel = topLevelCounts.get(curie);
+            int[] total = new int[DocumentPart.COUNT];
+            for (int part = 0; part < DocumentPart.COUNT; part++) {
+                int hierarchyCount = getCount(counts, part);
+                total[part] = hierarchyCount > 0 ? hierarchyCount : getCount(topLevel, part);
+            }
+            totalCounts.put(curie, total);
+        });
+        return totalCounts;
+    }
+
+    private static int getCount(int[] counts, int part) {
+        return counts == null || part >= counts.length ? 0 : counts[part];
     }
 
     // The goal here is to translate as many incoming curies as possible to the curies used in the text mined database.
@@ -762,8 +1077,7 @@ public class CooccurrenceController {
         if (unmatchedQueryCuries.size() > 0) {
             logger.debug("Trying SRI NN");
             List<List<String>> newSynonymsList = new ArrayList<>();
-            List<String> allTextMinedCuries = lookupQueries.getTextMinedCuries();
-            JsonNode nnJSON = sri.getNormalizedNodesInBatches(unmatchedQueryCuries, NN_BATCH_SIZE);
+            JsonNode nnJSON = sri.getNormalizedNodesInBatches(unmatchedQueryCuries);
             logger.debug(nnJSON.toPrettyString());
             for (String curie : unmatchedQueryCuries) {
                 logger.debug("Trying for " + curie);
@@ -773,7 +1087,7 @@ public class CooccurrenceController {
                     logger.debug("NN curie(s)");
                     logger.debug(String.join(",", synonyms));
                     for (String synonym : synonyms) {
-                        if (allTextMinedCuries.contains(synonym)) {
+                        if (lookupQueries.isTextMinedCurie(synonym)) {
                             logger.debug(synonym + " is in TM");
                             foundInNN = true;
                             textMinedCuriesList.add(synonym);
@@ -795,81 +1109,5 @@ public class CooccurrenceController {
         return textMinedCuriesList;
     }
 
-    private Map<String, List<String>> getPairCounts(Map<String, List<String>> subjectHierarchy, Map<String, List<String>> objectHierarchy) {
-        Map<String, List<String>> cooccurrences = lookupQueries.getCooccurrencesByParts(new ArrayList<>(subjectHierarchy.keySet()), new ArrayList<>(objectHierarchy.keySet()));
-        // region: Create Dictionary for Pair Counts
-        Map<String, Set<String>> documentDictionary = new HashMap<>();
-        Set<String> completedKeys = new HashSet<>();
-        for (Map.Entry<String, List<String>> subjectEntry : subjectHierarchy.entrySet()) {
-            String parentSubject =  subjectEntry.getKey();
-            for (Map.Entry<String, List<String>> objectEntry : objectHierarchy.entrySet()) {
-                String parentObject = objectEntry.getKey();
-                // look for cooccurrences between the parent subject and parent object
-                for (String part : documentParts) {
-                    String parentKey = parentSubject + parentObject + part;
-                    if (cooccurrences.containsKey(parentKey) && !completedKeys.contains(parentKey)) {
-                        completedKeys.add(parentKey);
-                        if (documentDictionary.containsKey(parentKey)) {
-                            documentDictionary.get(parentKey).addAll(cooccurrences.get(parentKey));
-                        } else {
-                            Set<String> docSet = new HashSet<>(cooccurrences.get(parentKey));
-                            documentDictionary.put(parentKey, docSet);
-                        }
-                    }
-                }
-                // Look for cooccurrences between the parent subject and any child objects
-                for (String childObject : objectEntry.getValue()) {
-                    for (String part : documentParts) {
-                        String parentKey = parentSubject + parentObject + part;
-                        String childKey = parentSubject + childObject + part;
-                        if (cooccurrences.containsKey(parentSubject + childObject + part) && !completedKeys.contains(parentKey + "_" + childKey)) {
-                            completedKeys.add(parentKey + "_" + childKey);
-                            if (documentDictionary.containsKey(parentKey)) {
-                                documentDictionary.get(parentKey).addAll(cooccurrences.get(childKey));
-                            } else {
-                                Set<String> docSet = new HashSet<>(cooccurrences.get(childKey));
-                                documentDictionary.put(parentKey, docSet);
-                            }
-                        }
-                    }
-                }
-                // look for cooccurrences between the parent object and any child subjects
-                for (String childSubject : subjectEntry.getValue()) {
-                    for (String part : documentParts) {
-                        String parentKey = parentSubject + parentObject + part;
-                        String childKey = childSubject + parentObject + part;
-                        if (cooccurrences.containsKey(childSubject + parentObject + part) && !completedKeys.contains(parentKey + "_" + childKey)) {
-                            completedKeys.add(parentKey + "_" + childKey);
-                            if (documentDictionary.containsKey(parentKey)) {
-                                documentDictionary.get(parentKey).addAll(cooccurrences.get(childKey));
-                            } else {
-                                Set<String> docSet = new HashSet<>(cooccurrences.get(childKey));
-                                documentDictionary.put(parentKey, docSet);
-                            }
-                        }
-                    }
-                    // Look for child-to-child cooccurrences.
-                    for (String childObject : objectEntry.getValue()) {
-                        for (String part : documentParts) {
-                            String parentKey = parentSubject + parentObject + part;
-                            String childKey = childSubject + childObject + part;
-                            if (cooccurrences.containsKey(childKey) && !completedKeys.contains(parentKey + "_" + childKey)) {
-                                completedKeys.add(parentKey + "_" + childKey);
-                                if (documentDictionary.containsKey(parentKey)) {
-                                    documentDictionary.get(parentKey).addAll(cooccurrences.get(childKey));
-                                } else {
-                                    Set<String> docSet = new HashSet<>(cooccurrences.get(childKey));
-                                    documentDictionary.put(parentKey, docSet);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        // endregion
-        return cooccurrences;
-    }
-
     // endregion
 }
@@ -0,0 +1,152 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A read-only, memory-mapped compressed sparse row (CSR) adjacency index of one <part>_cooccurrences table, written by CooccurrenceIndexBuilder.
+// The adjacency is symmetric: b is a neighbor of a when either (a, b) or (b, a) is in the table, which is what the forward plus reversed SQL
+// queries return. Neighbor lists are sorted and have no repeats. All reads go straight to the mapping, so the index costs no heap beyond a few
+// buffer objects and several JVMs on one host share the same pages through the OS page cache.
+//
+// File layout (little endian):
+//   int magic, int version, int nodeCount, int unused, long edgeCount
+//   long[nodeCount + 1] offsets      neighbors of node n are entries offsets[n] (inclusive) to offsets[n + 1] (exclusive)
+//   int[edgeCount] neighbors
+public final class CooccurrenceIndex {
+
+    static final int MAGIC = 0x31525343; // "CSR1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    // A single MappedByteBuffer can't exceed 2GB, so the neighbor array is mapped in 1GB segments.
+    static final int SEGMENT_SHIFT = 28;
+    static final int SEGMENT_INTS = 1 << SEGMENT_SHIFT;
+    static final int SEGMENT_MASK = SEGMENT_INTS - 1;
+
+    private final DocumentPart documentPart;
+    private final int nodeCount;
+    private final long edgeCount;
+    private final LongBuffer offsets;
+    private final IntBuffer[] neighborSegments;
+
+    private CooccurrenceIndex(DocumentPart documentPart, int nodeCount, long edgeCount, LongBuffer offsets, IntBuffer[] neighborSegments) {
+        this.documentPart = documentPart;
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.offsets = offsets;
+        this.neighborSegments = neighborSegments;
+    }
+
+    public static Path getPath(Path directory, DocumentPart documentPart) {
+        return directory.resolve(documentPart.getName() + "_cooccurrences.csr");
+    }
+
+    public static CooccurrenceIndex open(Path directory, DocumentPart documentPart) throws IOException {
+        Path file = getPath(directory, documentPart);
+        // The mapping stays valid after the channel is closed.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " cooccurrence index");
+            }
+            int nodeCount = header.getInt(8);
+            long edgeCount = header.getLong(16);
+            long offsetBytes = 8L * (nodeCount + 1);
+            long neighborsStart = HEADER_BYTES + offsetBytes;
+            if (channel.size() != neighborsStart + 4L * edgeCount) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            LongBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, offsetBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            int segmentCount = (int) ((edgeCount + SEGMENT_INTS - 1) >>> SEGMENT_SHIFT);
+            IntBuffer[] segments = new IntBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long firstEdge = (long) i << SEGMENT_SHIFT;
+                long length = Math.min(SEGMENT_INTS, edgeCount - firstEdge);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, neighborsStart + 4L * firstEdge, 4L * length)
+                        .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            }
+            return new CooccurrenceIndex(documentPart, nodeCount, edgeCount, offsets, segments);
+        }
+    }
+
+    public DocumentPart getDocumentPart() {
+        return documentPart;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public long getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int degree(int node) {
+        if (node < 0 || node >= nodeCount) {
+            return 0;
+        }
+        return (int) (offsets.get(node + 1) - offsets.get(node));
+    }
+
+    public boolean contains(int node1, int node2) {
+        if (node1 < 0 || node1 >= nodeCount) {
+            return false;
+        }
+        long low = offsets.get(node1);
+        long high = offsets.get(node1 + 1) - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            int neighbor = neighbor(middle);
+            if (neighbor < node2) {
+                low = middle + 1;
+            } else if (neighbor > node2) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Same result as the forward plus reversed SQL lookup: every cooccurring pair as (concept1List member, concept2List member), each once.
+    // Walks the neighbor lists of whichever side is smaller and tests the other side against a set of its ids.
+    public PairList findPairs(int[] concept1List, int[] concept2List) {
+        PairList pairs = new PairList();
+        boolean walkFirst = concept1List.length <= concept2List.length;
+        int[] walked = walkFirst ? concept1List : concept2List;
+        int[] otherList = walkFirst ? concept2List : concept1List;
+        IntSet other = new IntSet(otherList.length);
+        for (int node : otherList) {
+            other.add(node);
+        }
+        for (int node : walked) {
+            if (node < 0 || node >= nodeCount) {
+                continue;
+            }
+            long end = offsets.get(node + 1);
+            for (long edge = offsets.get(node); edge < end; edge++) {
+                int neighbor = neighbor(edge);
+                if (other.contains(neighbor)) {
+                    if (walkFirst) {
+                        pairs.add(node, neighbor);
+                    } else {
+                        pairs.add(neighbor, node);
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private int neighbor(long edge) {
+        return neighborSegments[(int) (edge >>> SEGMENT_SHIFT)].get((int) (edge & SEGMENT_MASK));
+    }
+}
@@ -0,0 +1,202 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.util.Arrays;
+
+// Offline builder for the CooccurrenceIndex files, one per document part. Run it against the service's database after every data load:
+//   java -cp cooccurrence.jar -Dloader.main=edu.ucdenver.ccp.cooccurrence.CooccurrenceIndexBuilder \
+//        org.springframework.boot.loader.PropertiesLauncher <output directory> [part ...]
+// Connection settings are read from SPRING_DATASOURCE_URL, SPRING_DATASOURCE_USERNAME and SPRING_DATASOURCE_PASSWORD.
+// Each file is written under a temporary name and moved into place, so a running service never maps a half-written index.
+public final class CooccurrenceIndexBuilder {
+
+    private static final int FETCH_SIZE = 100_000;
+
+    private CooccurrenceIndexBuilder() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: CooccurrenceIndexBuilder <output directory> [part ...]");
+            System.exit(1);
+        }
+        Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        DocumentPart[] parts = DocumentPart.values();
+        if (args.length > 1) {
+            parts = new DocumentPart[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                parts[i - 1] = DocumentPart.find(args[i]);
+                if (parts[i - 1] == null) {
+                    throw new IllegalArgumentException("Unknown document part: " + args[i]);
+                }
+            }
+        }
+        try (Connection connection = DriverManager.getConnection(System.getenv("SPRING_DATASOURCE_URL"),
+                System.getenv("SPRING_DATASOURCE_USERNAME"), System.getenv("SPRING_DATASOURCE_PASSWORD"))) {
+            connection.setAutoCommit(false); // required for the PostgreSQL driver to stream with a cursor instead of loading every row
+            for (DocumentPart documentPart : parts) {
+                long start = System.currentTimeMillis();
+                long edgeCount = build(connection, documentPart, directory);
+                System.out.printf("Wrote %s with %d neighbor entries in %dms%n", CooccurrenceIndex.getPath(directory, documentPart), edgeCount,
+                        System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    public static long build(Connection connection, DocumentPart documentPart, Path directory) throws SQLException, IOException {
+        int nodeCount = getMaxNodeId(connection) + 1;
+        int[] degrees = new int[nodeCount];
+
+        // Pass 1: stream each unordered pair once from the database, counting degrees and spilling the pairs to a scratch file.
+        Path pairsFile = Files.createTempFile(directory, documentPart.getName(), ".pairs");
+        try {
+            long pairCount = 0;
+            try (DataOutputStream pairsOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(pairsFile), 1 << 20));
+                 Statement statement = connection.createStatement()) {
+                statement.setFetchSize(FETCH_SIZE);
+                try (ResultSet resultSet = statement.executeQuery("" +
+                        "SELECT DISTINCT LEAST(node1, node2), GREATEST(node1, node2) " +
+                        "FROM " + documentPart.getName() + "_cooccurrences")) {
+                    while (resultSet.next()) {
+                        int low = resultSet.getInt(1);
+                        int high = resultSet.getInt(2);
+                        if (low < 0 || high >= nodeCount) {
+                            continue;
+                        }
+                        pairsOut.writeInt(low);
+                        pairsOut.writeInt(high);
+                        pairCount++;
+                        degrees[low]++;
+                        if (low != high) {
+                            degrees[high]++;
+                        }
+                    }
+                }
+            }
+
+            return writeIndex(pairsFile, pairCount, degrees, CooccurrenceIndex.getPath(directory, documentPart));
+        } finally {
+            Files.deleteIfExists(pairsFile);
+        }
+    }
+
+    // Writes the index for the (low, high) int pairs in pairsFile; degrees[n] must be the number of pairs that node n appears in.
+    static long writeIndex(Path pairsFile, long pairCount, int[] degrees, Path target) throws IOException {
+        int nodeCount = degrees.length;
+        long[] offsets = new long[nodeCount + 1];
+        for (int node = 0; node < nodeCount; node++) {
+            offsets[node + 1] = offsets[node] + degrees[node];
+        }
+        long edgeCount = offsets[nodeCount];
+
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            writeHeaderAndOffsets(channel, nodeCount, edgeCount, offsets);
+            long neighborsStart = CooccurrenceIndex.HEADER_BYTES + 8L * (nodeCount + 1);
+            int segmentCount = (int) ((edgeCount + CooccurrenceIndex.SEGMENT_INTS - 1) >>> CooccurrenceIndex.SEGMENT_SHIFT);
+            MappedByteBuffer[] mappings = new MappedByteBuffer[segmentCount];
+            IntBuffer[] segments = new IntBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long firstEdge = (long) i << CooccurrenceIndex.SEGMENT_SHIFT;
+                long length = Math.min(CooccurrenceIndex.SEGMENT_INTS, edgeCount - firstEdge);
+                mappings[i] = channel.map(FileChannel.MapMode.READ_WRITE, neighborsStart + 4L * firstEdge, 4L * length);
+                segments[i] = mappings[i].order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            }
+
+            // Pass 2: place both directions of every pair into the neighbor slots.
+            long[] cursors = Arrays.copyOf(offsets, nodeCount);
+            try (DataInputStream pairsIn = new DataInputStream(new BufferedInputStream(Files.newInputStream(pairsFile), 1 << 20))) {
+                for (long i = 0; i < pairCount; i++) {
+                    int low = pairsIn.readInt();
+                    int high = pairsIn.readInt();
+                    put(segments, cursors[low]++, high);
+                    if (low != high) {
+                        put(segments, cursors[high]++, low);
+                    }
+                }
+            }
+
+            // Pass 3: sort every neighbor list so lookups can binary search.
+            int[] buffer = new int[1024];
+            for (int node = 0; node < nodeCount; node++) {
+                int degree = (int) (offsets[node + 1] - offsets[node]);
+                if (degree < 2) {
+                    continue;
+                }
+                if (buffer.length < degree) {
+                    buffer = new int[Math.max(degree, buffer.length * 2)];
+                }
+                for (int i = 0; i < degree; i++) {
+                    buffer[i] = get(segments, offsets[node] + i);
+                }
+                Arrays.sort(buffer, 0, degree);
+                for (int i = 0; i < degree; i++) {
+                    put(segments, offsets[node] + i, buffer[i]);
+                }
+            }
+            for (MappedByteBuffer mapping : mappings) {
+                mapping.force();
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return edgeCount;
+    }
+
+    private static int getMaxNodeId(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(id), -1) FROM nodes")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static void writeHeaderAndOffsets(FileChannel channel, int nodeCount, long edgeCount, long[] offsets) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(CooccurrenceIndex.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(CooccurrenceIndex.MAGIC).putInt(CooccurrenceIndex.VERSION).putInt(nodeCount).putInt(0).putLong(edgeCount).flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+        ByteBuffer chunk = ByteBuffer.allocate(8 * 65536).order(ByteOrder.LITTLE_ENDIAN);
+        for (long offset : offsets) {
+            if (!chunk.hasRemaining()) {
+                position = writeFully(channel, chunk, position);
+            }
+            chunk.putLong(offset);
+        }
+        writeFully(channel, chunk, position);
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer chunk, long position) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            position += channel.write(chunk, position);
+        }
+        chunk.clear();
+        return position;
+    }
+
+    private static void put(IntBuffer[] segments, long index, int value) {
+        segments[(int) (index >>> CooccurrenceIndex.SEGMENT_SHIFT)].put((int) (index & CooccurrenceIndex.SEGMENT_MASK), value);
+    }
+
+    private static int get(IntBuffer[] segments, long index) {
+        return segments[(int) (index >>> CooccurrenceIndex.SEGMENT_SHIFT)].get((int) (index & CooccurrenceIndex.SEGMENT_MASK));
+    }
+}
@@ -0,0 +1,223 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// For every document part, a compressed (Roaring) bitmap of the documents each recorded (concept1, concept2) pair appears in. Pairs are
+// directed, as in PairTable and the SQL path (concept1_id = node1 AND concept2_id = node2): (a, b) and (b, a) have separate bitmaps, and a
+// pair's documents are exactly the rows of concept_pairs_<part> that record it in that direction. Per-concept bitmaps can't give that: their
+// AND also counts the hashes where both concepts appear without the pair being recorded, and no per-concept data tells those apart.
+// Document hashes are numbered densely while the index is built, so a pair count is its bitmap's cardinality and no hash strings are touched
+// until a publications list is actually written out. Only the document id of each hash (the part before the first '_', which is all the
+// publications attribute uses) is kept, and consecutive hashes of the same document share one String.
+// Instances are never modified; LookupRepository swaps in a new one when the data is refreshed.
+public final class DocumentBitmapIndex {
+
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+    private static final String[] NO_DOCUMENTS = new String[0];
+
+    // Indexed by DocumentPart ordinal; null for parts that were not loaded.
+    private final PairBitmaps[] bitmapsByPart;
+    private final String[][] documentIdsByPart;
+
+    private DocumentBitmapIndex(PairBitmaps[] bitmapsByPart, String[][] documentIdsByPart) {
+        this.bitmapsByPart = bitmapsByPart;
+        this.documentIdsByPart = documentIdsByPart;
+    }
+
+    public static Builder builder(int nodeCount) {
+        return new Builder(nodeCount);
+    }
+
+    // The documents (in this part) that record concept1 -> concept2. The returned bitmap is shared and must not be modified.
+    public RoaringBitmap getPairDocuments(DocumentPart documentPart, int concept1, int concept2) {
+        PairBitmaps bitmaps = bitmapsByPart[documentPart.ordinal()];
+        RoaringBitmap documents = bitmaps == null ? null : bitmaps.get(concept1, concept2);
+        return documents == null ? EMPTY : documents;
+    }
+
+    public int getPairCount(DocumentPart documentPart, int concept1, int concept2) {
+        return getPairDocuments(documentPart, concept1, concept2).getCardinality();
+    }
+
+    // One document id per set bit. A document appears more than once when several of its hashes (e.g. sentences) are set.
+    public List<String> getDocumentIds(DocumentPart documentPart, RoaringBitmap documents) {
+        String[] documentIds = getDocumentIds(documentPart);
+        List<String> ids = new ArrayList<>(documents.getCardinality());
+        IntIterator iterator = documents.getIntIterator();
+        while (iterator.hasNext()) {
+            ids.add(documentIds[iterator.next()]);
+        }
+        return ids;
+    }
+
+    public int getDocumentCount(DocumentPart documentPart) {
+        return getDocumentIds(documentPart).length;
+    }
+
+    private String[] getDocumentIds(DocumentPart documentPart) {
+        String[] documentIds = documentIdsByPart[documentPart.ordinal()];
+        return documentIds == null ? NO_DOCUMENTS : documentIds;
+    }
+
+    // The bitmaps and the pair tables that hold them.
+    public long getBitmapBytes() {
+        long bytes = 0;
+        for (PairBitmaps bitmaps : bitmapsByPart) {
+            if (bitmaps == null) {
+                continue;
+            }
+            bytes += (long) bitmaps.keys.length * (Long.BYTES + Integer.BYTES);
+            for (RoaringBitmap bitmap : bitmaps.bitmaps) {
+                if (bitmap != null) {
+                    bytes += bitmap.getLongSizeInBytes();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    // There is one bitmap per recorded pair, so the table holding them is the index's main overhead: an open-addressed (linear probing) table
+    // of packed pair keys, as in PairTable, costs a long and a reference per slot, where a HashMap<Long, RoaringBitmap> would add a boxed
+    // Long and an entry object per pair.
+    private static final class PairBitmaps {
+
+        private long[] keys = new long[16];
+        private RoaringBitmap[] bitmaps = new RoaringBitmap[16]; // null for empty slots
+        private int size;
+
+        RoaringBitmap get(int concept1, int concept2) {
+            long key = pairKey(concept1, concept2);
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; bitmaps[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return bitmaps[slot];
+                }
+            }
+            return null;
+        }
+
+        RoaringBitmap getOrCreate(int concept1, int concept2) {
+            long key = pairKey(concept1, concept2);
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            for (; bitmaps[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return bitmaps[slot];
+                }
+            }
+            RoaringBitmap bitmap = new RoaringBitmap();
+            keys[slot] = key;
+            bitmaps[slot] = bitmap;
+            // Keep the table at most half full so probe sequences stay short.
+            if (++size * 2 > keys.length) {
+                rehash(keys.length * 2);
+            }
+            return bitmap;
+        }
+
+        void runOptimize() {
+            for (RoaringBitmap bitmap : bitmaps) {
+                if (bitmap != null) {
+                    bitmap.runOptimize();
+                }
+            }
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            RoaringBitmap[] oldBitmaps = bitmaps;
+            keys = new long[capacity];
+            bitmaps = new RoaringBitmap[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldBitmaps[i] == null) {
+                    continue;
+                }
+                int slot = hash(oldKeys[i]) & mask;
+                while (bitmaps[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                bitmaps[slot] = oldBitmaps[i];
+            }
+        }
+
+        // Node ids are never negative, so the pair is just concept1 in the high half and concept2 in the low half.
+        private static long pairKey(int concept1, int concept2) {
+            return ((long) concept1 << 32) | (concept2 & 0xFFFFFFFFL);
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    // All rows of one document hash must be added together (ORDER BY document_hash), which is what lets ids be handed out without a hash map.
+    public static final class Builder {
+
+        private final int nodeCount;
+        private final PairBitmaps[] bitmapsByPart = new PairBitmaps[DocumentPart.COUNT];
+        private final String[][] documentIdsByPart = new String[DocumentPart.COUNT][];
+
+        private DocumentPart documentPart;
+        private PairBitmaps bitmaps;
+        private List<String> documentIds;
+        private String lastHash;
+
+        private Builder(int nodeCount) {
+            this.nodeCount = nodeCount;
+        }
+
+        public Builder startPart(DocumentPart documentPart) {
+            finishPart();
+            this.documentPart = documentPart;
+            this.bitmaps = new PairBitmaps();
+            this.documentIds = new ArrayList<>();
+            this.lastHash = null;
+            return this;
+        }
+
+        // One concept_pairs_<part> row: concept1 -> concept2 is recorded in the document hash.
+        public Builder add(String documentHash, int concept1, int concept2) {
+            if (documentPart == null) {
+                throw new IllegalStateException("startPart must be called before add");
+            }
+            if (!documentHash.equals(lastHash)) {
+                String documentId = documentHash.split("_")[0];
+                if (!documentIds.isEmpty() && documentIds.get(documentIds.size() - 1).equals(documentId)) {
+                    documentId = documentIds.get(documentIds.size() - 1);
+                }
+                documentIds.add(documentId);
+                lastHash = documentHash;
+            }
+            if (concept1 < 0 || concept1 >= nodeCount || concept2 < 0 || concept2 >= nodeCount) {
+                return this;
+            }
+            bitmaps.getOrCreate(concept1, concept2).add(documentIds.size() - 1);
+            return this;
+        }
+
+        public DocumentBitmapIndex build() {
+            finishPart();
+            return new DocumentBitmapIndex(bitmapsByPart, documentIdsByPart);
+        }
+
+        private void finishPart() {
+            if (documentPart == null) {
+                return;
+            }
+            bitmaps.runOptimize();
+            bitmapsByPart[documentPart.ordinal()] = bitmaps;
+            documentIdsByPart[documentPart.ordinal()] = documentIds.toArray(new String[0]);
+            documentPart = null;
+            bitmaps = null;
+            documentIds = null;
+        }
+    }
+}
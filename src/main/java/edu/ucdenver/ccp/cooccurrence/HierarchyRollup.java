@@ -0,0 +1,126 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+// Rolls cooccurrences up a concept hierarchy: the documents of a (parent subject, parent object, part) are the union of the documents of
+// every (descendant subject, descendant object, part) that cooccurs, where a concept counts as its own descendant. This is what the
+// hierarchical_concept_counts table does for single counts, so the rolled-up pair counts line up with the hierarchical single counts.
+// Each cooccurring pair is visited once and its documents OR'ed into the entry of every (parent, parent) combination it falls under, so the
+// work is proportional to the cooccurrences found (times the number of parents each concept has), never to parents x children x children.
+// Documents are unioned as int ids in RoaringBitmaps. Bitmap lookups already have int ids; document hashes are numbered with a DocumentIds.
+public final class HierarchyRollup {
+
+    private HierarchyRollup() {
+    }
+
+    // The queried concepts as parents of their descendants. A concept without descendants is still a parent of itself.
+    public static Map<String, List<String>> getHierarchy(List<String> concepts, Map<String, List<String>> descendants) {
+        Map<String, List<String>> hierarchy = new HashMap<>(descendants);
+        concepts.forEach(concept -> hierarchy.putIfAbsent(concept, Collections.emptyList()));
+        return hierarchy;
+    }
+
+    // Every concept a hierarchy mentions, parents and descendants alike, without repeats: the concepts to look cooccurrences up for.
+    public static List<String> getConcepts(Map<String, List<String>> hierarchy) {
+        Set<String> concepts = new LinkedHashSet<>(hierarchy.keySet());
+        hierarchy.values().forEach(concepts::addAll);
+        return new ArrayList<>(concepts);
+    }
+
+    // The node ids of the parents each concept falls under, itself included when it is a parent. Parents that aren't text-mined nodes have
+    // no cooccurrences to roll up and are left out.
+    static Map<String, int[]> getParentIds(Map<String, List<String>> hierarchy, NodeDictionary dictionary) {
+        Map<String, Set<Integer>> parents = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : hierarchy.entrySet()) {
+            int parentId = dictionary.getId(entry.getKey());
+            if (parentId == NodeDictionary.NOT_FOUND) {
+                continue;
+            }
+            parents.computeIfAbsent(entry.getKey(), c -> new LinkedHashSet<>()).add(parentId);
+            for (String child : entry.getValue()) {
+                parents.computeIfAbsent(child, c -> new LinkedHashSet<>()).add(parentId);
+            }
+        }
+        Map<String, int[]> parentIds = new HashMap<>(parents.size() * 2);
+        parents.forEach((concept, ids) -> parentIds.put(concept, ids.stream().mapToInt(Integer::intValue).toArray()));
+        return parentIds;
+    }
+
+    // The rolled-up table, keyed by the parents of the two hierarchies (parent -> descendants). documents turns a cooccurrence value into
+    // its document ids; it may return a shared bitmap, which is never modified. Pairs with no parent on either side are dropped.
+    public static <V> PairTable<RoaringBitmap> rollUp(PairTable<V> cooccurrences, Map<String, List<String>> subjectHierarchy,
+                                                      Map<String, List<String>> objectHierarchy, Function<V, RoaringBitmap> documents) {
+        NodeDictionary dictionary = cooccurrences.getDictionary();
+        Map<String, int[]> subjectParents = getParentIds(subjectHierarchy, dictionary);
+        Map<String, int[]> objectParents = getParentIds(objectHierarchy, dictionary);
+        PairTable<RoaringBitmap> rolledUp = new PairTable<>(dictionary);
+        for (int i = 0; i < cooccurrences.pairCount(); i++) {
+            int[] parentSubjects = subjectParents.get(dictionary.getCurie(cooccurrences.getConcept1(i)));
+            int[] parentObjects = objectParents.get(dictionary.getCurie(cooccurrences.getConcept2(i)));
+            if (parentSubjects == null || parentObjects == null) {
+                continue;
+            }
+            for (int part = 0; part < DocumentPart.COUNT; part++) {
+                V value = cooccurrences.getValue(i, part);
+                if (value == null) {
+                    continue;
+                }
+                RoaringBitmap pairDocuments = documents.apply(value);
+                for (int parentSubject : parentSubjects) {
+                    for (int parentObject : parentObjects) {
+                        RoaringBitmap parentDocuments = rolledUp.get(parentSubject, parentObject, part);
+                        if (parentDocuments == null) {
+                            rolledUp.put(parentSubject, parentObject, part, pairDocuments.clone());
+                        } else {
+                            parentDocuments.or(pairDocuments);
+                        }
+                    }
+                }
+            }
+        }
+        return rolledUp;
+    }
+
+    // Numbers document hashes in the order they are first seen, so they can be unioned as ints and turned back into hashes afterwards.
+    // One instance per roll-up; it is not thread safe.
+    public static final class DocumentIds {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> hashes = new ArrayList<>();
+
+        public RoaringBitmap toBitmap(Collection<String> documentHashes) {
+            RoaringBitmap bitmap = new RoaringBitmap();
+            for (String hash : documentHashes) {
+                Integer id = ids.get(hash);
+                if (id == null) {
+                    id = hashes.size();
+                    ids.put(hash, id);
+                    hashes.add(hash);
+                }
+                bitmap.add(id);
+            }
+            return bitmap;
+        }
+
+        public List<String> toHashes(RoaringBitmap documents) {
+            List<String> documentHashes = new ArrayList<>(documents.getCardinality());
+            IntIterator iterator = documents.getIntIterator();
+            while (iterator.hasNext()) {
+                documentHashes.add(hashes.get(iterator.next()));
+            }
+            return documentHashes;
+        }
+    }
+}
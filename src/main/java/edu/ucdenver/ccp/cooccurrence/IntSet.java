@@ -0,0 +1,67 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+// A set of node ids in an open-addressed (linear probing) int table sized to the number of ids a lookup brings, for deduping them and testing
+// membership. A BitSet would be as large as the whole node dictionary on every call, and a HashSet<Integer> boxes every id.
+// Ids are never negative; each occupied slot holds id + 1, so 0 marks an empty one.
+final class IntSet {
+
+    private int[] slots;
+    private int size;
+
+    IntSet(int expectedSize) {
+        // At most half full for the expected size.
+        slots = new int[Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1];
+    }
+
+    // True if the id was not in the set yet.
+    boolean add(int id) {
+        int mask = slots.length - 1;
+        int slot = hash(id) & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (slots[slot] == id + 1) {
+                return false;
+            }
+        }
+        slots[slot] = id + 1;
+        if (++size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return true;
+    }
+
+    boolean contains(int id) {
+        int mask = slots.length - 1;
+        for (int slot = hash(id) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (slots[slot] == id + 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldSlots = slots;
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int value : oldSlots) {
+            if (value == 0) {
+                continue;
+            }
+            int slot = hash(value - 1) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = value;
+        }
+    }
+
+    // Consecutive ids would otherwise fill runs of consecutive slots.
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
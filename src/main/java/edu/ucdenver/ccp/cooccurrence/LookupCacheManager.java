@@ -0,0 +1,78 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Creates every cache region on first use as a Caffeine cache bounded by its lookup.cache settings (see LookupCacheProperties), so a new
+// @Cacheable gets the defaults without any configuration. Each region records its statistics in a CacheStatsCounter.
+public class LookupCacheManager extends CaffeineCacheManager {
+
+    private final LookupCacheProperties properties;
+    private final Map<String, CacheStatsCounter> statsCounters = new ConcurrentHashMap<>();
+
+    public LookupCacheManager(LookupCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    protected Cache<Object, Object> createNativeCaffeineCache(String name) {
+        CacheStatsCounter statsCounter = statsCounters.computeIfAbsent(name, n -> new CacheStatsCounter());
+        return CacheConfiguration.newBuilder(properties.getRegion(name), statsCounter).build();
+    }
+
+    // For caches that are used directly rather than through @Cacheable (e.g. NormalizedNodeCache), so they are listed and summarized with
+    // the others. The cache should already record its statistics in statsCounter.
+    @SuppressWarnings("unchecked")
+    public void registerCache(String name, Cache<?, ?> cache, CacheStatsCounter statsCounter) {
+        statsCounters.put(name, statsCounter);
+        registerCustomCache(name, (Cache<Object, Object>) cache);
+    }
+
+    // Null until the region has been created (by getCache) or registered.
+    public CacheStatsCounter getStatsCounter(String name) {
+        return statsCounters.get(name);
+    }
+
+    // A summary of one region built only from counters the cache keeps anyway; no entry is read. The byte figures are the running total of
+    // CacheWeigher estimates, which Caffeine updates as entries are added and removed, and are left out for regions bounded by entry count.
+    public Map<String, Object> getStatistics(String name) {
+        org.springframework.cache.Cache cache = getCache(name);
+        if (cache == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Cache<Object, Object> nativeCache = (Cache<Object, Object>) cache.getNativeCache();
+        CacheStats stats = nativeCache.stats();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("entries", nativeCache.estimatedSize());
+        Optional<Policy.Eviction<Object, Object>> eviction = nativeCache.policy().eviction();
+        if (eviction.isPresent() && eviction.get().isWeighted()) {
+            statistics.put("estimated_bytes", eviction.get().weightedSize().orElse(0));
+            statistics.put("maximum_bytes", eviction.get().getMaximum());
+        }
+        statistics.put("hit_ratio", stats.requestCount() == 0 ? 0.0 : stats.hitRate());
+        statistics.put("hits", stats.hitCount());
+        statistics.put("misses", stats.missCount());
+        statistics.put("loads", stats.loadSuccessCount());
+        statistics.put("load_failures", stats.loadFailureCount());
+        statistics.put("evictions", stats.evictionCount());
+        statistics.put("evicted_bytes", stats.evictionWeight());
+        CacheStatsCounter statsCounter = statsCounters.get(name);
+        if (statsCounter != null) {
+            Map<String, Double> loadTimes = new LinkedHashMap<>();
+            loadTimes.put("p50", statsCounter.getLoadTimePercentile(0.5) / 1e6);
+            loadTimes.put("p90", statsCounter.getLoadTimePercentile(0.9) / 1e6);
+            loadTimes.put("p99", statsCounter.getLoadTimePercentile(0.99) / 1e6);
+            loadTimes.put("max", statsCounter.getLoadTimePercentile(1.0) / 1e6);
+            statistics.put("load_time_ms", loadTimes);
+        }
+        return statistics;
+    }
+}
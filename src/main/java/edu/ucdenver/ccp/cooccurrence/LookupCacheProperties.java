@@ -0,0 +1,90 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+// Per-region cache limits, e.g.
+//   lookup.cache.defaults.maximum-weight=256MB
+//   lookup.cache.regions.getCooccurrencesByParts.maximum-weight=4GB
+//   lookup.cache.regions.getCooccurrencesByParts.expire-after-access=2h
+// Any setting a region leaves out is taken from the defaults. The bound is taken as one setting: a region with its own maximum-weight or
+// maximum-size uses that and ignores both default bounds, so maximum-size works even though the defaults set a maximum-weight. Setting both
+// on one region (or on the defaults) is rejected. Regions are named after their @Cacheable value.
+@ConfigurationProperties(prefix = "lookup.cache")
+public class LookupCacheProperties {
+
+    private final Region defaults = new Region();
+    private final Map<String, Region> regions = new HashMap<>();
+
+    public Region getDefaults() {
+        return defaults;
+    }
+
+    public Map<String, Region> getRegions() {
+        return regions;
+    }
+
+    // The region's own settings over the defaults.
+    public Region getRegion(String name) {
+        Region region = regions.getOrDefault(name, new Region());
+        checkBound("lookup.cache.regions." + name, region);
+        checkBound("lookup.cache.defaults", defaults);
+        Region bound = region.getMaximumWeight() != null || region.getMaximumSize() != null ? region : defaults;
+        Region merged = new Region();
+        merged.setMaximumWeight(bound.getMaximumWeight());
+        merged.setMaximumSize(bound.getMaximumSize());
+        merged.setExpireAfterAccess(region.getExpireAfterAccess() != null ? region.getExpireAfterAccess() : defaults.getExpireAfterAccess());
+        merged.setExpireAfterWrite(region.getExpireAfterWrite() != null ? region.getExpireAfterWrite() : defaults.getExpireAfterWrite());
+        return merged;
+    }
+
+    private static void checkBound(String prefix, Region region) {
+        if (region.getMaximumWeight() != null && region.getMaximumSize() != null) {
+            throw new IllegalStateException(prefix + " sets both maximum-weight and maximum-size; set one");
+        }
+    }
+
+    public static class Region {
+        // Upper bound on the estimated bytes held by the region (see CacheWeigher). At most one of maximumWeight and maximumSize is set.
+        private DataSize maximumWeight;
+        private Long maximumSize;
+        private Duration expireAfterAccess;
+        private Duration expireAfterWrite;
+
+        public DataSize getMaximumWeight() {
+            return maximumWeight;
+        }
+
+        public void setMaximumWeight(DataSize maximumWeight) {
+            this.maximumWeight = maximumWeight;
+        }
+
+        public Long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(Long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getExpireAfterAccess() {
+            return expireAfterAccess;
+        }
+
+        public void setExpireAfterAccess(Duration expireAfterAccess) {
+            this.expireAfterAccess = expireAfterAccess;
+        }
+
+        public Duration getExpireAfterWrite() {
+            return expireAfterWrite;
+        }
+
+        public void setExpireAfterWrite(Duration expireAfterWrite) {
+            this.expireAfterWrite = expireAfterWrite;
+        }
+    }
+}
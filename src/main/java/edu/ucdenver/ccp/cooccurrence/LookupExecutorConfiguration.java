@@ -0,0 +1,70 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class LookupExecutorConfiguration implements WebMvcConfigurer {
+
+    @Value("${lookup.response-writer.threads:8}")
+    private int responseWriterThreads;
+    @Value("${lookup.response-writer.queue-capacity:64}")
+    private int responseWriterQueueCapacity;
+
+    // Every thread in this pool holds at most one database connection, so the thread count is the connection budget for concurrent
+    // cooccurrence queries. Keep it below spring.datasource.hikari.maximum-pool-size so request threads can still get a connection.
+    @Bean(name = "lookupExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService lookupExecutor(@Value("${lookup.executor.threads:8}") int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "lookup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Runs the per-edge stages of a lookup (see CooccurrenceController.lookupEdge). These threads wait on the lookupExecutor's queries, so
+    // the two pools must stay separate: sharing one could leave every thread waiting on subqueries that have no thread left to run on.
+    // There is no queue: when every thread is busy, the request thread runs the stage itself. The pool only lets one request's edges
+    // overlap, so it is never a server-wide cap on lookups, and no request waits behind another's edges.
+    @Bean(name = "lookupStageExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService lookupStageExecutor(@Value("${lookup.stage-executor.threads:4}") int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "lookup-stage-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // Writes /query response bodies (a StreamingResponseBody runs on the MVC async executor once the handler returns). The ExecutorService
+    // beans above keep Boot from creating its applicationTaskExecutor, which would otherwise leave MVC on a SimpleAsyncTaskExecutor and
+    // a new thread per response. A thread is held for as long as its client takes to read the body; responses beyond the threads wait in
+    // the queue, and once that is full too they fail rather than start more threads.
+    @Bean(name = "responseWriterExecutor")
+    public ThreadPoolTaskExecutor responseWriterExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(responseWriterThreads);
+        executor.setMaxPoolSize(responseWriterThreads);
+        executor.setQueueCapacity(responseWriterQueueCapacity);
+        executor.setThreadNamePrefix("response-writer-");
+        executor.setDaemon(true);
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(responseWriterExecutor());
+    }
+}
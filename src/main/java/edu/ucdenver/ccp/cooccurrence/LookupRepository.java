@@ -1,20 +1,193 @@
 package edu.ucdenver.ccp.cooccurrence;
 
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.*;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Repository
 public class LookupRepository {
     @PersistenceContext
     EntityManager session;
 
-    @Cacheable("getCuriesForCategory")
+    private volatile NodeDictionary nodeDictionary;
+
+    // The cached value for curies without counts. getAllCached compares it with equals, which for an array means this very instance.
+    private static final int[] NO_COUNTS = new int[0];
+
+    @Autowired
+    private LookupCacheManager cacheManager;
+
+    @Autowired
+    @Qualifier("lookupExecutor")
+    private ExecutorService lookupExecutor;
+
+    // When set, list parameters are bound as a single PostgreSQL array (see SqlArrays) instead of being split into IN-list chunks.
+    @Value("${lookup.array-parameters:true}")
+    private boolean arrayParameters;
+
+    // When set, cooccurrent nodes are read from the <part>_cooccurrences_canonical tables (see sql/canonical_cooccurrences.sql), which store each
+    // unordered pair once as (node_low, node_high). That takes one query per chunk instead of a forward and a reversed query.
+    @Value("${lookup.canonical-pairs:false}")
+    private boolean canonicalPairs;
+
+    // Directory holding the <part>_cooccurrences.csr files written by CooccurrenceIndexBuilder. Parts with an index are answered from the
+    // memory-mapped file without touching the database; the rest (or all of them, when this is empty) still go through SQL.
+    @Value("${lookup.cooccurrence-index.directory:}")
+    private String cooccurrenceIndexDirectory;
+
+    private volatile Map<DocumentPart, CooccurrenceIndex> cooccurrenceIndexes = Collections.emptyMap();
+
+    // When set, the documents of every recorded pair are loaded into a DocumentBitmapIndex at startup and on /refresh, and pair counts are
+    // read from bitmaps instead of reading every document hash of every pair out of the concept_pairs_<part> tables.
+    @Value("${lookup.document-bitmaps:false}")
+    private boolean documentBitmaps;
+
+    private volatile DocumentBitmapIndex documentBitmapIndex;
+
+    // The loads running in getOrLoad, by method name and arguments.
+    private final ConcurrentMap<List<Object>, CompletableFuture<Object>> loadsInFlight = new ConcurrentHashMap<>();
+
+    public boolean isArrayParameters() {
+        return arrayParameters;
+    }
+
+    public void setArrayParameters(boolean arrayParameters) {
+        this.arrayParameters = arrayParameters;
+    }
+
+    // region: Query helpers
+
+    // The predicate that matches a column against the named list parameter, e.g. "curie " + inList("curies", "text").
+    private String inList(String parameter, String sqlType) {
+        return arrayParameters ? SqlArrays.anyOf(parameter, sqlType) : "IN (:" + parameter + ")";
+    }
+
+    // The value to bind to a parameter created by inList.
+    private Object listValue(List<?> values) {
+        return arrayParameters ? SqlArrays.toArrayLiteral(values) : values;
+    }
+
+    // Node ids are only boxed for IN lists, which Hibernate binds from a collection.
+    private Object listValue(int[] ids) {
+        if (arrayParameters) {
+            return SqlArrays.toArrayLiteral(ids);
+        }
+        List<Integer> values = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            values.add(id);
+        }
+        return values;
+    }
+
+    private static int[] slice(int[] ids, int from, int to) {
+        return from == 0 && to == ids.length ? ids : Arrays.copyOfRange(ids, from, to);
+    }
+
+    // In array mode the whole list goes out in one query, otherwise it is split to stay under the JDBC bind parameter limit.
+    private int chunkSize(int listSize, int maxListSize) {
+        return arrayParameters ? Math.max(listSize, 1) : maxListSize;
+    }
+
+    // The bulk lookups keep one cache entry per curie rather than one per argument list, so requests that share most of their curies share
+    // most of their entries. Hits are served from the region's cache and all the misses are loaded in one call to the query method. Curies
+    // the query returns nothing for are cached as the missing value and left out of the result, so they aren't queried again either.
+    private <V> Map<String, V> getAllCached(String region, List<String> curies, Function<List<String>, Map<String, V>> query, V missing) {
+        com.github.benmanes.caffeine.cache.Cache<String, V> cache = getNativeCache(region);
+        Map<String, V> cached = cache.getAll(curies, misses -> {
+            List<String> missList = new ArrayList<>();
+            misses.forEach(missList::add);
+            Map<String, V> loaded = new HashMap<>(query.apply(missList));
+            for (String curie : missList) {
+                loaded.putIfAbsent(curie, missing);
+            }
+            return loaded;
+        });
+        Map<String, V> found = new HashMap<>(cached.size());
+        for (Map.Entry<String, V> entry : cached.entrySet()) {
+            if (!missing.equals(entry.getValue())) {
+                found.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return found;
+    }
+
+    // The cooccurrence lookups take seconds, too long to run inside the cache's compute (@Cacheable(sync = true) holds a lock that blocks
+    // other keys in the same bin), so their regions are read and written here rather than through @Cacheable. Concurrent misses for one key
+    // wait on the first caller's load instead of each running the query, and the load is timed into the region's CacheStatsCounter as
+    // Caffeine times its own, so /cache reports it. The in-flight entry is only removed once the value is in the cache, and a caller that
+    // finds no load running looks in the cache again before starting one, so a load that finishes between its two checks isn't repeated.
+    @SuppressWarnings("unchecked")
+    private <V> V getOrLoad(String region, List<Object> key, Supplier<V> loader) {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> cache = getNativeCache(region);
+        Object cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return (V) cached;
+        }
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> running = loadsInFlight.putIfAbsent(key, load);
+        if (running != null) {
+            try {
+                return (V) running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        CacheStatsCounter statsCounter = cacheManager.getStatsCounter(region);
+        long start = 0;
+        try {
+            V value = (V) cache.asMap().get(key); // doesn't count as a second miss
+            if (value == null) {
+                start = System.nanoTime();
+                value = loader.get();
+                if (statsCounter != null) {
+                    statsCounter.recordLoadSuccess(System.nanoTime() - start);
+                }
+                cache.put(key, value);
+            }
+            load.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            if (statsCounter != null && start != 0) {
+                statsCounter.recordLoadFailure(System.nanoTime() - start);
+            }
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadsInFlight.remove(key, load);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K, V> com.github.benmanes.caffeine.cache.Cache<K, V> getNativeCache(String region) {
+        Cache cache = cacheManager.getCache(region);
+        if (cache == null) {
+            throw new IllegalStateException("No cache region " + region);
+        }
+        return (com.github.benmanes.caffeine.cache.Cache<K, V>) cache.getNativeCache();
+    }
+
+    // endregion
+
+    @Cacheable(value = "getCuriesForCategory", sync = true)
     public List<String> getCuriesForCategory(String category) {
         List<Object> results = session.createNativeQuery("" +
                         "SELECT n.curie " +
@@ -26,24 +199,26 @@ public class LookupRepository {
         return results.stream().map(o -> (String) o).collect(Collectors.toList());
     }
 
-    @Cacheable("getCategoriesForCuries")
     public Map<String, List<String>> getCategoriesForCuries(List<String> curies) {
+        Map<String, List<String>> categoryMap = new HashMap<>();
+        // Copied, since callers filter these lists in place and the cached ones are shared.
+        getAllCached("getCategoriesForCuries", curies, this::queryCategoriesForCuries, Collections.emptyList())
+                .forEach((curie, categories) -> categoryMap.put(curie, new ArrayList<>(categories)));
+        return categoryMap;
+    }
+
+    private Map<String, List<String>> queryCategoriesForCuries(List<String> curies) {
         String query = "SELECT n.curie, nc.category " +
                 "FROM nodes n INNER JOIN node_category nc ON nc.node_id = n.id " +
-                "WHERE n.curie IN (:curies)";
+                "WHERE n.curie " + inList("curies", "text");
         List<Object[]> results = new ArrayList<>();
-        if (curies.size() <= Short.MAX_VALUE) {
-            results = session.createNativeQuery(query)
-                    .setParameter("curies", curies)
-                    .getResultList();
-        } else {
-            for (int i = 0; i < curies.size(); i += Short.MAX_VALUE) {
-                int endIndex = Math.min(i + Short.MAX_VALUE, curies.size());
-                List<String> curiesSubList = curies.subList(i, endIndex);
-                results.addAll(session.createNativeQuery(query)
-                        .setParameter("curies", curiesSubList)
-                        .getResultList());
-            }
+        int MAX_LIST_SIZE = chunkSize(curies.size(), Short.MAX_VALUE);
+        for (int i = 0; i < curies.size(); i += MAX_LIST_SIZE) {
+            int endIndex = Math.min(i + MAX_LIST_SIZE, curies.size());
+            List<String> curiesSubList = curies.subList(i, endIndex);
+            results.addAll(session.createNativeQuery(query)
+                    .setParameter("curies", listValue(curiesSubList))
+                    .getResultList());
         }
         Map<String, List<String>> categoryMap = new HashMap<>();
         for (Object[] resultRow : results) {
@@ -61,24 +236,22 @@ public class LookupRepository {
         return categoryMap;
     }
 
-    @Cacheable("getLabels")
     public Map<String, String> getLabels(List<String> curies) {
+        return getAllCached("getLabels", curies, this::queryLabels, "");
+    }
+
+    private Map<String, String> queryLabels(List<String> curies) {
         String query = "SELECT curie, label " +
                 "FROM labels " +
-                "WHERE curie IN (:curies)";
+                "WHERE curie " + inList("curies", "text");
         List<Object[]> results = new ArrayList<>();
-        if (curies.size() <= Short.MAX_VALUE) {
-            results = session.createNativeQuery(query)
-                    .setParameter("curies", curies)
-                    .getResultList();
-        } else {
-            for (int i = 0; i < curies.size(); i += Short.MAX_VALUE) {
-                int endIndex = Math.min(i + Short.MAX_VALUE, curies.size());
-                List<String> curiesSubList = curies.subList(i, endIndex);
-                results.addAll(session.createNativeQuery(query)
-                        .setParameter("curies", curiesSubList)
-                        .getResultList());
-            }
+        int MAX_LIST_SIZE = chunkSize(curies.size(), Short.MAX_VALUE);
+        for (int i = 0; i < curies.size(); i += MAX_LIST_SIZE) {
+            int endIndex = Math.min(i + MAX_LIST_SIZE, curies.size());
+            List<String> curiesSubList = curies.subList(i, endIndex);
+            results.addAll(session.createNativeQuery(query)
+                    .setParameter("curies", listValue(curiesSubList))
+                    .getResultList());
         }
         Map<String, String> labelMap = new HashMap<>();
         for (Object[] resultRow : results) {
@@ -89,10 +262,15 @@ public class LookupRepository {
         return labelMap;
     }
 
-    @Cacheable("getPairCounts")
-    public Map<String, List<String>> getPairCounts(List<String> concept1List, List<String> concept2List) {
+    // Cached in the getPairCounts region, see getOrLoad.
+    public PairTable<List<String>> getPairCounts(List<String> concept1List, List<String> concept2List) {
+        return getOrLoad("getPairCounts", List.of("getPairCounts", concept1List, concept2List), () -> loadPairCounts(concept1List, concept2List));
+    }
+
+    private PairTable<List<String>> loadPairCounts(List<String> concept1List, List<String> concept2List) {
+        NodeDictionary dictionary = getNodeDictionary();
         if (concept1List.size() == 0 || concept2List.size() == 0) {
-            return Collections.emptyMap();
+            return new PairTable<>(dictionary);
         }
         List<Object[]> results = session.createNativeQuery("" +
                         "SELECT concept1, concept2, part, document_hash " +
@@ -102,289 +280,550 @@ public class LookupRepository {
                 .setParameter("concept1", concept1List)
                 .setParameter("concept2", concept2List)
                 .getResultList();
-        Map<String, List<String>> cooccurrences = new HashMap<>();
+        PairTable<List<String>> cooccurrences = new PairTable<>(dictionary);
+        int dropped = 0;
+        int unknownParts = 0;
         for (Object[] resultRow : results) {
-            String key = (String) resultRow[0] + (String) resultRow[1] + (String) resultRow[2];
-            String value = (String) resultRow[3];
-            List<String> docs;
-            if (cooccurrences.containsKey(key)) {
-                docs = cooccurrences.get(key);
-            } else {
-                docs = new ArrayList<>();
+            int concept1 = dictionary.getId((String) resultRow[0]);
+            int concept2 = dictionary.getId((String) resultRow[1]);
+            // PairTable is keyed by node id, so a pair whose curie isn't in the node dictionary has nowhere to go. That only happens when
+            // concept_pairs and the node table are out of step, which the warning below makes visible.
+            if (concept1 == NodeDictionary.NOT_FOUND || concept2 == NodeDictionary.NOT_FOUND) {
+                dropped++;
+                continue;
+            }
+            DocumentPart part = DocumentPart.find((String) resultRow[2]);
+            if (part == null) {
+                unknownParts++;
+                CooccurrenceController.logger.debug(String.format("getPairCounts skipped a row with unknown part %s", resultRow[2]));
+                continue;
             }
-            docs.add(value);
-            cooccurrences.put(key, docs);
+            cooccurrences.computeIfAbsent(concept1, concept2, part.ordinal(), ArrayList::new).add((String) resultRow[3]);
+        }
+        if (unknownParts > 0) {
+            CooccurrenceController.logger.warn(String.format("getPairCounts skipped %d of %d rows with an unknown document part",
+                    unknownParts, results.size()));
+        }
+        if (dropped > 0) {
+            CooccurrenceController.logger.warn(String.format("getPairCounts dropped %d of %d rows with curies missing from the node dictionary",
+                    dropped, results.size()));
         }
         return cooccurrences;
     }
 
-    public Map<String, List<String>> getCooccurrencesByDocumentPart(List<Integer> node1List, List<Integer> node2List, String documentPart) {
-        if (node1List.isEmpty() || node2List.isEmpty() || !CooccurrenceController.documentParts.contains(documentPart)) {
-            return Collections.emptyMap();
+    // Fetches the document hashes for exactly the given (concept1_id, concept2_id) pairs, across every document part in one query.
+    // The pairs are sent as three parallel arrays and unnested into a join against each concept_pairs_<part> table, so only the
+    // pairs that were found to cooccur are read (rather than every combination of their node1 and node2 ids).
+    public PairTable<List<String>> getCooccurrencesByPairs(Map<DocumentPart, PairList> pairsByPart) {
+        PairTable<List<String>> cooccurrences = new PairTable<>(getNodeDictionary());
+        Query query = getPairsQuery(pairsByPart, "" +
+                "SELECT cp.concept1_id, cp.concept2_id, %2$d, cp.document_hash " +
+                "FROM concept_pairs_%1$s cp INNER JOIN pairs ON pairs.part = '%1$s' " +
+                "AND cp.concept1_id = pairs.node1 AND cp.concept2_id = pairs.node2 " +
+                "GROUP BY cp.concept1_id, cp.concept2_id, cp.document_hash ");
+        if (query == null) {
+            return cooccurrences;
         }
-        String abstractQuery = "" +
-                "SELECT concept1_curie, concept2_curie, document_hash " +
-                "FROM concept_pairs_abstract " +
-                "WHERE concept1_id IN (:p1) " +
-                "AND concept2_id IN (:p2) " +
-                "GROUP BY concept1_curie, concept2_curie, document_hash";
-        String titleQuery = "" +
-                "SELECT concept1_curie, concept2_curie, document_hash " +
-                "FROM concept_pairs_title " +
-                "WHERE concept1_id IN (:p1) " +
-                "AND concept2_id IN (:p2) " +
-                "GROUP BY concept1_curie, concept2_curie, document_hash";
-        String articleQuery = "" +
-                "SELECT concept1_curie, concept2_curie, document_hash " +
-                "FROM concept_pairs_article " +
-                "WHERE concept1_id IN (:p1) " +
-                "AND concept2_id IN (:p2) " +
-                "GROUP BY concept1_curie, concept2_curie, document_hash";
-        String sentenceQuery = "" +
-                "SELECT concept1_curie, concept2_curie, document_hash " +
-                "FROM concept_pairs_sentence " +
-                "WHERE concept1_id IN (:p1) " +
-                "AND concept2_id IN (:p2) " +
-                "GROUP BY concept1_curie, concept2_curie, document_hash";
-        String activeQuery;
-        switch (documentPart) {
-            case "abstract":
-                activeQuery = abstractQuery;
-                break;
-            case "title":
-                activeQuery = titleQuery;
-                break;
-            case "sentence":
-                activeQuery = sentenceQuery;
-                break;
-            default:
-                activeQuery = articleQuery;
-        }
-        List<Object[]> results = session.createNativeQuery(activeQuery).setParameter("p1", node1List).setParameter("p2", node2List).getResultList();
-        Map<String, List<String>> cooccurrences = new HashMap<>();
+        List<Object[]> results = query.getResultList();
         for (Object[] resultRow : results) {
-            String key = (String) resultRow[0] + (String) resultRow[1] + documentPart;
-            String value = (String) resultRow[2];
-            List<String> docs;
-            if (cooccurrences.containsKey(key)) {
-                docs = cooccurrences.get(key);
-            } else {
-                docs = new ArrayList<>();
-            }
-            docs.add(value);
-            cooccurrences.put(key, docs);
+            cooccurrences.computeIfAbsent((Integer) resultRow[0], (Integer) resultRow[1], (Integer) resultRow[2], ArrayList::new)
+                    .add((String) resultRow[3]);
         }
         return cooccurrences;
     }
 
-    @Cacheable("getSingleCounts")
-    public Map<String, Map<String, Integer>> getSingleCounts(List<String> curies) {
+    // The number of documents each of the given pairs cooccurs in, per part, without the pairs in fewer than minPairCount documents.
+    // Only counts leave the database, so a constrained lookup can work out which pairs it keeps before reading any of their document hashes.
+    public PairTable<Integer> getPairDocumentCounts(Map<DocumentPart, PairList> pairsByPart, int minPairCount) {
+        PairTable<Integer> pairCounts = new PairTable<>(getNodeDictionary());
+        Query query = getPairsQuery(pairsByPart, "" +
+                "SELECT cp.concept1_id, cp.concept2_id, %2$d, COUNT(DISTINCT cp.document_hash) " +
+                "FROM concept_pairs_%1$s cp INNER JOIN pairs ON pairs.part = '%1$s' " +
+                "AND cp.concept1_id = pairs.node1 AND cp.concept2_id = pairs.node2 " +
+                "GROUP BY cp.concept1_id, cp.concept2_id " +
+                "HAVING COUNT(DISTINCT cp.document_hash) >= :minPairCount ");
+        if (query == null) {
+            return pairCounts;
+        }
+        List<Object[]> results = query.setParameter("minPairCount", minPairCount).getResultList();
+        for (Object[] resultRow : results) {
+            pairCounts.put((Integer) resultRow[0], (Integer) resultRow[1], (Integer) resultRow[2], ((Number) resultRow[3]).intValue());
+        }
+        return pairCounts;
+    }
+
+    // One partQuery per part that has pairs, joined with UNION ALL. partQuery is a format string given the part's name (%1$s) and
+    // PairTable index (%2$d), which can join the pairs table of (node1, node2, part). Null when there are no pairs at all.
+    private Query getPairsQuery(Map<DocumentPart, PairList> pairsByPart, String partQuery) {
+        List<PairList> partPairs = new ArrayList<>(DocumentPart.COUNT);
+        List<DocumentPart> queriedParts = new ArrayList<>();
+        int pairCount = 0;
+        for (DocumentPart documentPart : DocumentPart.values()) {
+            PairList pairs = pairsByPart.get(documentPart);
+            if (pairs == null || pairs.isEmpty()) {
+                continue;
+            }
+            pairs = pairs.distinct();
+            partPairs.add(pairs);
+            queriedParts.add(documentPart);
+            pairCount += pairs.size();
+        }
+        if (queriedParts.isEmpty()) {
+            return null;
+        }
+        int[] node1List = new int[pairCount];
+        int[] node2List = new int[pairCount];
+        List<String> partList = new ArrayList<>(pairCount);
+        int index = 0;
+        for (int i = 0; i < queriedParts.size(); i++) {
+            PairList pairs = partPairs.get(i);
+            for (int pair = 0; pair < pairs.size(); pair++, index++) {
+                node1List[index] = pairs.getConcept1(pair);
+                node2List[index] = pairs.getConcept2(pair);
+                partList.add(queriedParts.get(i).getName());
+            }
+        }
+        StringBuilder queryBuilder = new StringBuilder("" +
+                "WITH pairs AS (" +
+                "SELECT * FROM unnest(CAST(:a AS int[]), CAST(:b AS int[]), CAST(:parts AS text[])) AS t(node1, node2, part)) ");
+        for (int i = 0; i < queriedParts.size(); i++) {
+            DocumentPart documentPart = queriedParts.get(i);
+            if (i > 0) {
+                queryBuilder.append("UNION ALL ");
+            }
+            queryBuilder.append(String.format(partQuery, documentPart.getName(), documentPart.ordinal()));
+        }
+        return session.createNativeQuery(queryBuilder.toString())
+                .setParameter("a", SqlArrays.toArrayLiteral(node1List))
+                .setParameter("b", SqlArrays.toArrayLiteral(node2List))
+                .setParameter("parts", SqlArrays.toArrayLiteral(partList));
+    }
+
+    // Cached per curie, with the counts for every part the curie has; the query always returns all of a curie's parts anyway.
+    // Each curie's counts are indexed by DocumentPart ordinal. The arrays are the cached ones, so they must not be modified.
+    public Map<String, int[]> getSingleCounts(List<String> curies) {
+        return getAllCached("getSingleCounts", curies, this::querySingleCounts, NO_COUNTS);
+    }
+
+    private Map<String, int[]> querySingleCounts(List<String> curies) {
         List<Object[]> results = new ArrayList<>();
         String query = "" +
                 "SELECT curie, document_part, single_count " +
                 "FROM concept_counts " +
-                "WHERE curie IN (:curies)";
-        if (curies.size() <= Short.MAX_VALUE) {
-            results = session.createNativeQuery(query)
-                    .setParameter("curies", curies)
-                    .getResultList();
-        } else {
-            for (int i = 0; i < curies.size(); i += Short.MAX_VALUE) {
-                int endIndex = Math.min(i + Short.MAX_VALUE, curies.size());
-                List<String> curiesSubList = curies.subList(i, endIndex);
-                results.addAll(session.createNativeQuery(query)
-                        .setParameter("curies", curiesSubList)
-                        .getResultList());
-            }
+                "WHERE curie " + inList("curies", "text");
+        int MAX_LIST_SIZE = chunkSize(curies.size(), Short.MAX_VALUE);
+        for (int i = 0; i < curies.size(); i += MAX_LIST_SIZE) {
+            int endIndex = Math.min(i + MAX_LIST_SIZE, curies.size());
+            List<String> curiesSubList = curies.subList(i, endIndex);
+            results.addAll(session.createNativeQuery(query)
+                    .setParameter("curies", listValue(curiesSubList))
+                    .getResultList());
         }
-        Map<String, Map<String, Integer>> counts = new HashMap<>();
+        Map<String, int[]> counts = new HashMap<>();
         for (Object[] resultRow : results) {
-            String firstKey = (String) resultRow[0];
-            String secondKey = (String) resultRow[1];
-            if (!counts.containsKey(firstKey)) {
-                counts.put(firstKey, new HashMap<>());
+            DocumentPart part = DocumentPart.find((String) resultRow[1]);
+            if (part != null) {
+                counts.computeIfAbsent((String) resultRow[0], curie -> new int[DocumentPart.COUNT])[part.ordinal()] = (Integer) resultRow[2];
             }
-            Map<String, Integer> currentMap = counts.get(firstKey);
-            currentMap.put(secondKey, (Integer) resultRow[2]);
-            counts.put(firstKey, currentMap);
         }
         return counts;
     }
 
-    public List<Integer> getIds(List<String> curies) {
+    public int[] getIds(List<String> curies) {
         if (curies == null || curies.size() == 0) {
-            return Collections.emptyList();
-        }
-        int MAX_LIST_SIZE = Short.MAX_VALUE / 2;
-        List<Integer> resultsList = new ArrayList<>();
-        String query = "SELECT id FROM nodes WHERE curie IN (:c)";
-        for (int startIndex = 0; startIndex < curies.size(); startIndex += MAX_LIST_SIZE) {
-            int endIndex = Math.min(startIndex + MAX_LIST_SIZE, curies.size());
-            resultsList.addAll(session.createNativeQuery(query).setParameter("c", curies.subList(startIndex, endIndex)).getResultList());
+            return new int[0];
         }
-        return resultsList;
+        return getNodeDictionary().getIds(curies);
     }
 
-    public Map<String, List<List<Integer>>> getCoccurrentNodesByParts(List<String> concept1List, List<String> concept2List) {
-        if (concept1List.size() == 0 || concept2List.size() == 0) {
-            return Collections.emptyMap();
+    // Loads every (id, curie) row of the nodes table into a new NodeDictionary and swaps it in. Lookups already holding the old dictionary
+    // finish with it, so this is safe to call while queries are running.
+    @Transactional(readOnly = true)
+    public NodeDictionary refreshNodeDictionary() {
+        long t1 = System.currentTimeMillis();
+        List<Object[]> results = session.createNativeQuery("SELECT id, curie FROM nodes").getResultList();
+        int[] ids = new int[results.size()];
+        String[] curies = new String[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            Object[] row = results.get(i);
+            ids[i] = ((Number) row[0]).intValue();
+            curies[i] = (String) row[1];
         }
-        int MAX_LIST_SIZE = Short.MAX_VALUE / 2;
-        Map<String, List<List<Integer>>> cooccurrences = new HashMap<>();
-        for (int startIndex = 0; startIndex < concept1List.size(); startIndex += MAX_LIST_SIZE) {
-            int endIndex = Math.min(startIndex + MAX_LIST_SIZE, concept1List.size());
-            List<String> concept1Sublist = concept1List.subList(startIndex, endIndex);
-            for (int startIndex2 = 0; startIndex2 < concept2List.size(); startIndex2 += MAX_LIST_SIZE) {
-                int endIndex2 = Math.min(startIndex2 + MAX_LIST_SIZE, concept2List.size());
-                List<String> concept2Sublist = concept2List.subList(startIndex2, endIndex2);
-                Map<String, List<List<Integer>>> subMap = getCooccurrentNodes(getIds(concept1Sublist), getIds(concept2Sublist));
-
-                for (String documentPart : CooccurrenceController.documentParts) {
-                    List<List<Integer>> existingPairs = cooccurrences.getOrDefault(documentPart, new ArrayList<>());
-                    existingPairs.addAll(subMap.getOrDefault(documentPart, new ArrayList<>()));
-                    cooccurrences.put(documentPart, existingPairs);
+        results = null; // let the row objects go before the dictionary tables are allocated
+        NodeDictionary dictionary = NodeDictionary.build(ids, curies);
+        nodeDictionary = dictionary;
+        CooccurrenceController.logger.info(String.format("Loaded %d nodes into the node dictionary in %dms", dictionary.size(), System.currentTimeMillis() - t1));
+        return dictionary;
+    }
+
+    public NodeDictionary getNodeDictionary() {
+        NodeDictionary dictionary = nodeDictionary;
+        if (dictionary == null) {
+            synchronized (this) {
+                dictionary = nodeDictionary;
+                if (dictionary == null) {
+                    dictionary = refreshNodeDictionary();
                 }
             }
         }
-        return cooccurrences;
+        return dictionary;
+    }
+
+    // Maps whichever index files exist in the configured directory. Indexes already in use keep their old mapping until the lookup finishes;
+    // the builder moves new files into place rather than overwriting them, so the old mapping stays readable.
+    public Map<DocumentPart, CooccurrenceIndex> refreshCooccurrenceIndexes() {
+        if (cooccurrenceIndexDirectory == null || cooccurrenceIndexDirectory.isBlank()) {
+            return cooccurrenceIndexes;
+        }
+        Path directory = Paths.get(cooccurrenceIndexDirectory);
+        Map<DocumentPart, CooccurrenceIndex> indexes = new EnumMap<>(DocumentPart.class);
+        for (DocumentPart documentPart : DocumentPart.values()) {
+            if (!Files.exists(CooccurrenceIndex.getPath(directory, documentPart))) {
+                CooccurrenceController.logger.warn("No cooccurrence index for " + documentPart.getName() + " in " + directory + ", falling back to SQL");
+                continue;
+            }
+            try {
+                CooccurrenceIndex index = CooccurrenceIndex.open(directory, documentPart);
+                indexes.put(documentPart, index);
+                CooccurrenceController.logger.info(String.format("Mapped %s cooccurrence index: %d nodes, %d neighbor entries",
+                        documentPart.getName(), index.getNodeCount(), index.getEdgeCount()));
+            } catch (IOException iex) {
+                CooccurrenceController.logger.error("Could not open the cooccurrence index for " + documentPart.getName() + ", falling back to SQL", iex);
+            }
+        }
+        cooccurrenceIndexes = Collections.unmodifiableMap(indexes);
+        return cooccurrenceIndexes;
     }
 
-    public List<Object[]> getCooccurrencesByParts(String query, List<Integer> concept1List, List<Integer> concept2List) {
-        int MAX_LIST_SIZE = Short.MAX_VALUE / 2;
+    // Streams each concept_pairs_<part> table once, grouped by document hash, into a new DocumentBitmapIndex and swaps it in.
+    @Transactional(readOnly = true)
+    public DocumentBitmapIndex refreshDocumentBitmapIndex() {
+        if (!documentBitmaps) {
+            return null;
+        }
+        long t1 = System.currentTimeMillis();
+        DocumentBitmapIndex.Builder builder = DocumentBitmapIndex.builder(getNodeDictionary().getIdBound());
+        for (DocumentPart documentPart : DocumentPart.values()) {
+            builder.startPart(documentPart);
+            Stream<Object[]> rows = session.createNativeQuery("" +
+                            "SELECT document_hash, concept1_id, concept2_id " +
+                            "FROM concept_pairs_" + documentPart.getName() + " " +
+                            "ORDER BY document_hash")
+                    .setHint("org.hibernate.fetchSize", 100_000) // streams with a cursor rather than loading the whole table
+                    .getResultStream();
+            try (rows) {
+                rows.forEach(row -> builder.add((String) row[0], ((Number) row[1]).intValue(), ((Number) row[2]).intValue()));
+            }
+        }
+        DocumentBitmapIndex index = builder.build();
+        documentBitmapIndex = index;
+        CooccurrenceController.logger.info(String.format("Loaded document bitmaps (%d bytes) in %dms", index.getBitmapBytes(), System.currentTimeMillis() - t1));
+        return index;
+    }
+
+    // Null unless lookup.document-bitmaps is set.
+    public DocumentBitmapIndex getDocumentBitmapIndex() {
+        return documentBitmapIndex;
+    }
+
+    public boolean isTextMinedCurie(String curie) {
+        return getNodeDictionary().contains(curie);
+    }
+
+    // Ids are resolved once per side from the node dictionary; getCooccurrentNodes takes care of splitting them into query-sized chunks.
+    public Map<DocumentPart, PairList> getCoccurrentNodesByParts(List<String> concept1List, List<String> concept2List, Set<DocumentPart> documentParts) {
+        if (concept1List.size() == 0 || concept2List.size() == 0 || documentParts.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return getCooccurrentNodes(getIds(concept1List), getIds(concept2List), documentParts);
+    }
+
+    public List<Object[]> getCooccurrencesByParts(String query, int[] concept1List, int[] concept2List) {
         List<Object[]> results = new ArrayList<>();
-        for (int startIndex1 = 0; startIndex1 < concept1List.size(); startIndex1 += MAX_LIST_SIZE) {
-            int endIndex1 = Math.min(startIndex1 + MAX_LIST_SIZE, concept1List.size());
-            List<Integer> concept1Sublist = concept1List.subList(startIndex1, endIndex1);
-            for (int startIndex2 = 0; startIndex2 < concept2List.size(); startIndex2 += MAX_LIST_SIZE) {
-                int endIndex2 = Math.min(startIndex2 + MAX_LIST_SIZE, concept2List.size());
-                List<Integer> concept2Sublist = concept2List.subList(startIndex2, endIndex2);
-                // TODO: find out why the node1 -> node2 cooccurrence is not the same as node2 -> node1
-                results.addAll(session.createNativeQuery(query)
-                        .setParameter("p1", concept1Sublist)
-                        .setParameter("p2", concept2Sublist)
-                        .getResultList());
-                List<Object[]> reversedResults = session.createNativeQuery(query)
-                        .setParameter("p2", concept1Sublist)
-                        .setParameter("p1", concept2Sublist)
-                        .getResultList();
-                for (Object[] row : reversedResults) {
-                    results.add(new Object[]{row[1], row[0]});
+        runAll(getCooccurrenceTasks(query, false, concept1List, concept2List)).forEach(results::addAll);
+        return results;
+    }
+
+    // Same contract as getCooccurrencesByParts: every row is [concept1List member, concept2List member]. The query must select
+    // (node_low, node_high) from a canonical table, matching either end against either list via the p1 and p2 parameters.
+    public List<Object[]> getCanonicalCooccurrencesByParts(String query, int[] concept1List, int[] concept2List) {
+        List<Object[]> results = new ArrayList<>();
+        runAll(getCooccurrenceTasks(query, true, concept1List, concept2List)).forEach(results::addAll);
+        return results;
+    }
+
+    // One task per (concept1List chunk, concept2List chunk). Canonical queries bind each list twice, hence the smaller chunks.
+    private List<Callable<List<Object[]>>> getCooccurrenceTasks(String query, boolean canonical, int[] concept1List, int[] concept2List) {
+        int MAX_LIST_SIZE1 = chunkSize(concept1List.length, canonical ? Short.MAX_VALUE / 4 : Short.MAX_VALUE / 2);
+        int MAX_LIST_SIZE2 = chunkSize(concept2List.length, canonical ? Short.MAX_VALUE / 4 : Short.MAX_VALUE / 2);
+        List<Callable<List<Object[]>>> tasks = new ArrayList<>();
+        for (int startIndex1 = 0; startIndex1 < concept1List.length; startIndex1 += MAX_LIST_SIZE1) {
+            int endIndex1 = Math.min(startIndex1 + MAX_LIST_SIZE1, concept1List.length);
+            int[] concept1Sublist = slice(concept1List, startIndex1, endIndex1);
+            for (int startIndex2 = 0; startIndex2 < concept2List.length; startIndex2 += MAX_LIST_SIZE2) {
+                int endIndex2 = Math.min(startIndex2 + MAX_LIST_SIZE2, concept2List.length);
+                int[] concept2Sublist = slice(concept2List, startIndex2, endIndex2);
+                if (canonical) {
+                    tasks.add(() -> queryCanonicalCooccurrences(query, concept1Sublist, concept2Sublist));
+                } else {
+                    tasks.add(() -> queryCooccurrences(query, concept1Sublist, concept2Sublist));
                 }
             }
         }
+        return tasks;
+    }
+
+    private List<Object[]> queryCooccurrences(String query, int[] concept1Sublist, int[] concept2Sublist) {
+        // TODO: find out why the node1 -> node2 cooccurrence is not the same as node2 -> node1
+        List<Object[]> results = new ArrayList<>(session.createNativeQuery(query)
+                .setParameter("p1", listValue(concept1Sublist))
+                .setParameter("p2", listValue(concept2Sublist))
+                .getResultList());
+        List<Object[]> reversedResults = session.createNativeQuery(query)
+                .setParameter("p2", listValue(concept1Sublist))
+                .setParameter("p1", listValue(concept2Sublist))
+                .getResultList();
+        for (Object[] row : reversedResults) {
+            results.add(new Object[]{row[1], row[0]});
+        }
         return results;
     }
 
-    public Map<String, List<List<Integer>>> getCooccurrentNodes(List<Integer> concept1List, List<Integer> concept2List) {
-        Map<String, List<List<Integer>>> cooccurrences = new HashMap<>(4);
-        String abstractQuery = "" +
-                "SELECT node1, node2 AS part " +
-                "FROM abstract_cooccurrences " +
-                "WHERE node1 IN (:p1) AND node2 IN (:p2)";
-        String titleQuery = "" +
-                "SELECT node1, node2 " +
-                "FROM title_cooccurrences " +
-                "WHERE node1 IN (:p1) AND node2 IN (:p2)";
-        String articleQuery = "" +
-                "SELECT node1, node2 " +
-                "FROM article_cooccurrences " +
-                "WHERE node1 IN (:p1) AND node2 IN (:p2)";
-        String sentenceQuery = "" +
-                "SELECT node1, node2 " +
-                "FROM sentence_cooccurrences " +
-                "WHERE node1 IN (:p1) AND node2 IN (:p2)";
-        List<Object[]> abstractResults = getCooccurrencesByParts(abstractQuery, concept1List, concept2List);
-        List<Object[]> titleResults = getCooccurrencesByParts(titleQuery, concept1List, concept2List);
-        List<Object[]> articleResults = getCooccurrencesByParts(articleQuery, concept1List, concept2List);
-        List<Object[]> sentenceResults = getCooccurrencesByParts(sentenceQuery, concept1List, concept2List);
-        cooccurrences.put("abstract", abstractResults.stream().map((row) -> List.of((Integer) row[0], (Integer) row[1])).collect(Collectors.toList()));
-        cooccurrences.put("title", titleResults.stream().map((row) -> List.of((Integer) row[0], (Integer) row[1])).collect(Collectors.toList()));
-        cooccurrences.put("article", articleResults.stream().map((row) -> List.of((Integer) row[0], (Integer) row[1])).collect(Collectors.toList()));
-        cooccurrences.put("sentence", sentenceResults.stream().map((row) -> List.of((Integer) row[0], (Integer) row[1])).collect(Collectors.toList()));
+    private List<Object[]> queryCanonicalCooccurrences(String query, int[] concept1Sublist, int[] concept2Sublist) {
+        IntSet concept1Set = new IntSet(concept1Sublist.length);
+        for (int id : concept1Sublist) {
+            concept1Set.add(id);
+        }
+        IntSet concept2Set = new IntSet(concept2Sublist.length);
+        for (int id : concept2Sublist) {
+            concept2Set.add(id);
+        }
+        List<Object[]> canonicalResults = session.createNativeQuery(query)
+                .setParameter("p1", listValue(concept1Sublist))
+                .setParameter("p2", listValue(concept2Sublist))
+                .getResultList();
+        List<Object[]> results = new ArrayList<>(canonicalResults.size());
+        // Restore subject/object orientation. A pair with both ends in both lists is emitted both ways, as the reversed query used to do.
+        for (Object[] row : canonicalResults) {
+            int low = (Integer) row[0];
+            int high = (Integer) row[1];
+            if (concept1Set.contains(low) && concept2Set.contains(high)) {
+                results.add(new Object[]{low, high});
+            }
+            if (concept1Set.contains(high) && concept2Set.contains(low)) {
+                results.add(new Object[]{high, low});
+            }
+        }
+        return results;
+    }
+
+    // All parts and all chunks go to the lookup executor as one flat batch (a task never waits on other tasks, so the bounded pool can't
+    // starve itself). Results are merged in part and chunk order, so the output doesn't depend on which query finishes first.
+    // Parts with a mapped CooccurrenceIndex are answered in memory instead. Only the given parts are looked up; the tables of the
+    // others are never queried, and they have no entry in the result.
+    public Map<DocumentPart, PairList> getCooccurrentNodes(int[] concept1List, int[] concept2List, Set<DocumentPart> documentParts) {
+        Map<DocumentPart, CooccurrenceIndex> indexes = cooccurrenceIndexes;
+        List<Callable<List<Object[]>>> tasks = new ArrayList<>();
+        List<DocumentPart> taskParts = new ArrayList<>();
+        for (DocumentPart documentPart : documentParts) {
+            if (indexes.containsKey(documentPart)) {
+                continue;
+            }
+            List<Callable<List<Object[]>>> partTasks = getCooccurrenceTasks(getCooccurrentNodesQuery(documentPart), canonicalPairs, concept1List, concept2List);
+            tasks.addAll(partTasks);
+            partTasks.forEach(task -> taskParts.add(documentPart));
+        }
+        List<List<Object[]>> results = runAll(tasks);
+        Map<DocumentPart, PairList> cooccurrences = new EnumMap<>(DocumentPart.class);
+        for (DocumentPart documentPart : documentParts) {
+            CooccurrenceIndex index = indexes.get(documentPart);
+            cooccurrences.put(documentPart, index != null ? index.findPairs(concept1List, concept2List) : new PairList());
+        }
+        for (int i = 0; i < results.size(); i++) {
+            PairList partPairs = cooccurrences.get(taskParts.get(i));
+            results.get(i).forEach(row -> partPairs.add((Integer) row[0], (Integer) row[1]));
+        }
         return cooccurrences;
     }
 
-    public Map<String, Map<String, Integer>> getHierchicalCounts(List<String> parentCuries) {
+    private String getCooccurrentNodesQuery(DocumentPart documentPart) {
+        if (canonicalPairs) {
+            return "" +
+                    "SELECT node_low, node_high " +
+                    "FROM " + documentPart.getName() + "_cooccurrences_canonical " +
+                    "WHERE (node_low " + inList("p1", "int") + " AND node_high " + inList("p2", "int") + ") " +
+                    "OR (node_low " + inList("p2", "int") + " AND node_high " + inList("p1", "int") + ")";
+        }
+        return "" +
+                "SELECT node1, node2 " +
+                "FROM " + documentPart.getName() + "_cooccurrences " +
+                "WHERE node1 " + inList("p1", "int") + " AND node2 " + inList("p2", "int");
+    }
+
+    // Runs the tasks concurrently on the lookup executor and returns their results in task order. The executor's thread count is the number
+    // of connections these queries may hold at once (see LookupExecutorConfiguration). If any task fails, the ones still queued or running
+    // are cancelled and the failure is rethrown to the caller. Note that a cancelled task stops at its next query, not in the middle of one.
+    private <T> List<T> runAll(List<Callable<T>> tasks) {
+        CompletionService<T> completionService = new ExecutorCompletionService<>(lookupExecutor);
+        Map<Future<T>, Integer> futureIndexes = new HashMap<>(tasks.size());
+        List<T> results = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                futureIndexes.put(completionService.submit(tasks.get(i)), i);
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                Future<T> future = completionService.take();
+                results.set(futureIndexes.get(future), future.get());
+            }
+        } catch (ExecutionException eex) {
+            if (eex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) eex.getCause();
+            }
+            throw new IllegalStateException("Cooccurrence query failed", eex.getCause());
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for cooccurrence queries", iex);
+        } finally {
+            futureIndexes.keySet().forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+
+    // Indexed by DocumentPart ordinal, like getSingleCounts.
+    public Map<String, int[]> getHierchicalCounts(List<String> parentCuries) {
         String queryString = "" +
                 "SELECT curie, document_part, document_count " +
                 "FROM hierarchical_concept_counts " +
-                "WHERE curie IN (:p)";
+                "WHERE curie " + inList("p", "text");
         List<Object[]> results = new ArrayList<>();
-        int MAX_LIST_SIZE = Short.MAX_VALUE;
+        int MAX_LIST_SIZE = chunkSize(parentCuries.size(), Short.MAX_VALUE);
         for (int startIndex = 0; startIndex < parentCuries.size(); startIndex += MAX_LIST_SIZE) {
             int endIndex = Math.min(startIndex + MAX_LIST_SIZE, parentCuries.size());
             List<String> keySublist = parentCuries.subList(startIndex, endIndex);
-            results.addAll(session.createNativeQuery(queryString).setParameter("p", keySublist).getResultList());
+            results.addAll(session.createNativeQuery(queryString).setParameter("p", listValue(keySublist)).getResultList());
         }
-        Map<String, Map<String, Integer>> countMap = new HashMap<>();
+        Map<String, int[]> countMap = new HashMap<>();
+        Map<String, boolean[]> seen = new HashMap<>();
         for (Object[] row : results) {
             String parentCurie = (String) row[0];
-            String documentPart = (String) row[1];
-            Integer count = (Integer) row[2];
-            if (!countMap.containsKey(parentCurie)) {
-                Map<String, Integer> partMap = new HashMap<>();
-                partMap.put(documentPart, count);
-                countMap.put(parentCurie, partMap);
-            } else if (!countMap.get(parentCurie).containsKey(documentPart)) {
-                countMap.get(parentCurie).put(documentPart, count);
+            DocumentPart documentPart = DocumentPart.find((String) row[1]);
+            if (documentPart == null) {
+                continue;
+            }
+            // The first count listed for a (curie, part) wins.
+            boolean[] partsSeen = seen.computeIfAbsent(parentCurie, c -> new boolean[DocumentPart.COUNT]);
+            if (!partsSeen[documentPart.ordinal()]) {
+                partsSeen[documentPart.ordinal()] = true;
+                countMap.computeIfAbsent(parentCurie, c -> new int[DocumentPart.COUNT])[documentPart.ordinal()] = (Integer) row[2];
             }
         }
         return countMap;
     }
 
-    // returns a Map where the key is concept1_curie + concept2_curie + documentPart and the value is a list of document hashes
-    @Cacheable("getCooccurrencesByParts")
-    public Map<String, List<String>> getCooccurrencesByParts(List<String> concept1List, List<String> concept2List) {
+    // returns the document hashes of every cooccurring (concept1, concept2, documentPart), for the given parts only
+    // Cached in the getCooccurrencesByParts region, see getOrLoad.
+    public PairTable<List<String>> getCooccurrencesByParts(List<String> concept1List, List<String> concept2List, Set<DocumentPart> documentParts) {
+        return getOrLoad("getCooccurrencesByParts", List.of("getCooccurrencesByParts", concept1List, concept2List, documentParts),
+                () -> loadCooccurrencesByParts(concept1List, concept2List, documentParts));
+    }
+
+    private PairTable<List<String>> loadCooccurrencesByParts(List<String> concept1List, List<String> concept2List, Set<DocumentPart> documentParts) {
         long t1 = System.currentTimeMillis();
         CooccurrenceController.logger.debug(String.format("Starting getCooccurrencesByParts with (%d, %d) concepts.", concept1List.size(), concept2List.size()));
-        int MAX_SUBLIST_SIZE = Short.MAX_VALUE / 2;
-        Map<String, List<String>> cooccurrenceMap = new HashMap<>();
-        Map<String, List<List<Integer>>> cooccurrentPairs = getCoccurrentNodesByParts(concept1List, concept2List);
+        Map<DocumentPart, PairList> cooccurrentPairs = getCoccurrentNodesByParts(concept1List, concept2List, documentParts);
 
         long t2 = System.currentTimeMillis();
         CooccurrenceController.logger.debug("Got cooccurrent pairs in " + (t2 - t1) + "ms");
 
-        for (String documentPart : CooccurrenceController.documentParts) {
-            if (!cooccurrentPairs.containsKey(documentPart)) {
-                continue;
-            }
-            List<List<Integer>> pairs = cooccurrentPairs.get(documentPart);
-            List<Integer> node1List = pairs.stream().map(pair -> pair.get(0)).distinct().collect(Collectors.toList());
-            List<Integer> node2List = pairs.stream().map(pair -> pair.get(1)).distinct().collect(Collectors.toList());
-            CooccurrenceController.logger.debug(String.format("Getting cooccurrences for part: %s with (%d, %d) concepts.", documentPart, node1List.size(), node2List.size()));
-            for (int startIndex1 = 0; startIndex1 < node1List.size(); startIndex1 += MAX_SUBLIST_SIZE) {
-                int endIndex1 = Math.min(startIndex1 + MAX_SUBLIST_SIZE, node1List.size());
-                List<Integer> node1Sublist = node1List.subList(startIndex1, endIndex1);
-                for (int startIndex2 = 0; startIndex2 < node2List.size(); startIndex2 += MAX_SUBLIST_SIZE) {
-                    int endIndex2 = Math.min(startIndex2 + MAX_SUBLIST_SIZE, node2List.size());
-                    List<Integer> node2Sublist = node2List.subList(startIndex2, endIndex2);
-                    long t3 = System.currentTimeMillis();
-                    cooccurrenceMap.putAll(getCooccurrencesByDocumentPart(node1Sublist, node2Sublist, documentPart));
-                    CooccurrenceController.logger.debug(String.format("Got %s cooccurrences in %dms", documentPart, System.currentTimeMillis() - t3));
+        for (Map.Entry<DocumentPart, PairList> partPairs : cooccurrentPairs.entrySet()) {
+            CooccurrenceController.logger.debug(String.format("Getting cooccurrences for part: %s with %d pairs.", partPairs.getKey().getName(), partPairs.getValue().size()));
+        }
+        PairTable<List<String>> cooccurrenceMap = getCooccurrencesByPairs(cooccurrentPairs);
+        CooccurrenceController.logger.debug(String.format("%d total cooccurrence keys in %dms", cooccurrenceMap.size(), System.currentTimeMillis() - t2));
+        return cooccurrenceMap;
+    }
+
+
+    // The count-only counterpart of getCooccurrencesByParts: how many documents each cooccurring (concept1, concept2, documentPart) has,
+    // counted by the database, for lookups that don't write out publications. No document hash leaves the database.
+    // Cached in the getCooccurrenceCountsByParts region, see getOrLoad.
+    public PairTable<Integer> getCooccurrenceCountsByParts(List<String> concept1List, List<String> concept2List, Set<DocumentPart> documentParts) {
+        return getOrLoad("getCooccurrenceCountsByParts", List.of("getCooccurrenceCountsByParts", concept1List, concept2List, documentParts),
+                () -> loadCooccurrenceCountsByParts(concept1List, concept2List, documentParts));
+    }
+
+    private PairTable<Integer> loadCooccurrenceCountsByParts(List<String> concept1List, List<String> concept2List, Set<DocumentPart> documentParts) {
+        long t1 = System.currentTimeMillis();
+        Map<DocumentPart, PairList> cooccurrentPairs = getCoccurrentNodesByParts(concept1List, concept2List, documentParts);
+        PairTable<Integer> pairCounts = getPairDocumentCounts(cooccurrentPairs, 1);
+        CooccurrenceController.logger.debug(String.format("%d cooccurrence counts in %dms", pairCounts.size(), System.currentTimeMillis() - t1));
+        return pairCounts;
+    }
+
+    // The bitmap counterpart of getCooccurrencesByParts: the documents each cooccurring pair shares, per part.
+    // Pairs are found the same way; their documents are then taken from the index, and no document hash is read from the database.
+    // Pairs with fewer than minPairCount documents are left out.
+    public PairTable<RoaringBitmap> getPairDocumentBitmaps(DocumentBitmapIndex index, List<String> concept1List, List<String> concept2List,
+                                                          Set<DocumentPart> documentParts, int minPairCount) {
+        long t1 = System.currentTimeMillis();
+        NodeDictionary dictionary = getNodeDictionary();
+        Map<DocumentPart, PairList> cooccurrentPairs = getCoccurrentNodesByParts(concept1List, concept2List, documentParts);
+        PairTable<RoaringBitmap> pairDocuments = new PairTable<>(dictionary);
+        for (Map.Entry<DocumentPart, PairList> partPairs : cooccurrentPairs.entrySet()) {
+            DocumentPart documentPart = partPairs.getKey();
+            int part = documentPart.ordinal();
+            PairList pairs = partPairs.getValue();
+            for (int pair = 0; pair < pairs.size(); pair++) {
+                int concept1 = pairs.getConcept1(pair);
+                int concept2 = pairs.getConcept2(pair);
+                RoaringBitmap documents = index.getPairDocuments(documentPart, concept1, concept2);
+                if (!documents.isEmpty() && documents.getCardinality() >= minPairCount) {
+                    pairDocuments.put(concept1, concept2, part, documents);
                 }
             }
         }
-        CooccurrenceController.logger.debug(String.format("%d total cooccurrence keys in %dms", cooccurrenceMap.keySet().size(), System.currentTimeMillis() - t2));
-        return cooccurrenceMap;
+        CooccurrenceController.logger.debug(String.format("%d pair bitmaps in %dms", pairDocuments.size(), System.currentTimeMillis() - t1));
+        return pairDocuments;
     }
 
+    // The count-only counterpart of getPairDocumentBitmaps: each pair's count is the cardinality of its bitmap.
+    public PairTable<Integer> getPairDocumentBitmapCounts(DocumentBitmapIndex index, List<String> concept1List, List<String> concept2List,
+                                                          Set<DocumentPart> documentParts, int minPairCount) {
+        NodeDictionary dictionary = getNodeDictionary();
+        Map<DocumentPart, PairList> cooccurrentPairs = getCoccurrentNodesByParts(concept1List, concept2List, documentParts);
+        PairTable<Integer> pairCounts = new PairTable<>(dictionary);
+        for (Map.Entry<DocumentPart, PairList> partPairs : cooccurrentPairs.entrySet()) {
+            DocumentPart documentPart = partPairs.getKey();
+            int part = documentPart.ordinal();
+            PairList pairs = partPairs.getValue();
+            for (int pair = 0; pair < pairs.size(); pair++) {
+                int concept1 = pairs.getConcept1(pair);
+                int concept2 = pairs.getConcept2(pair);
+                int pairCount = index.getPairCount(documentPart, concept1, concept2);
+                if (pairCount > 0 && pairCount >= minPairCount) {
+                    pairCounts.put(concept1, concept2, part, pairCount);
+                }
+            }
+        }
+        return pairCounts;
+    }
 
     public Map<String, List<String>> getDescendantHierarchy(List<String> startingConcepts) {
         if (startingConcepts == null || startingConcepts.size() == 0) {
             return Collections.emptyMap();
         }
-        int MAX_LIST_SIZE = Short.MAX_VALUE;
-        List<Integer> ids = getIds(startingConcepts);
+        int[] ids = getIds(startingConcepts);
+        int MAX_LIST_SIZE = chunkSize(ids.length, Short.MAX_VALUE);
         List<Object[]> resultsList = new ArrayList<>();
         String query = "" +
                 "SELECT n1.curie AS parent, n2.curie AS child " +
                 "FROM nodes n1 " +
                 "INNER JOIN flat_node_hierarchy fnh ON fnh.parent_id = n1.id " +
                 "INNER JOIN nodes n2 ON n2.id = fnh.child_id " +
-                "WHERE fnh.parent_id IN (:p)";
-        for (int startIndex = 0; startIndex < ids.size(); startIndex += MAX_LIST_SIZE) {
-            int endIndex = Math.min(startIndex + MAX_LIST_SIZE, ids.size());
-            resultsList.addAll(session.createNativeQuery(query).setParameter("p", ids.subList(startIndex, endIndex)).getResultList());
+                "WHERE fnh.parent_id " + inList("p", "int");
+        for (int startIndex = 0; startIndex < ids.length; startIndex += MAX_LIST_SIZE) {
+            int endIndex = Math.min(startIndex + MAX_LIST_SIZE, ids.length);
+            resultsList.addAll(session.createNativeQuery(query).setParameter("p", listValue(slice(ids, startIndex, endIndex))).getResultList());
         }
         Map<String, List<String>> conceptGroups = new HashMap<>();
         for (Object[] row : resultsList) {
@@ -403,14 +842,20 @@ public class LookupRepository {
         return conceptGroups;
     }
 
-    @Cacheable("getConceptCounts")
-    public Map<String, Integer> getConceptCounts() {
+    // Indexed by DocumentPart ordinal.
+    @Cacheable(value = "getConceptCounts", sync = true)
+    public int[] getConceptCounts() {
         List<Object[]> results = session.createNativeQuery("SELECT document_part, COUNT(DISTINCT(curie)) " +
                 "FROM concept_counts " +
                 "GROUP BY document_part").getResultList();
-        Map<String, Integer> countMap = new HashMap<>();
-        results.forEach(row -> countMap.put((String) row[0], ((BigInteger) row[1]).intValue()));
-        return countMap;
+        int[] counts = new int[DocumentPart.COUNT];
+        for (Object[] row : results) {
+            DocumentPart part = DocumentPart.find((String) row[0]);
+            if (part != null) {
+                counts[part.ordinal()] = ((BigInteger) row[1]).intValue();
+            }
+        }
+        return counts;
     }
 
     // The concept_synonyms table contains zero-to-many "equivalent identifiers" from SRI's Node Normalizer for every identifier used in Text Mined Cooccurrence
@@ -421,8 +866,8 @@ public class LookupRepository {
         List<Object[]> results = session.createNativeQuery(
                 "SELECT curie1, curie2 " +
                 "FROM concept_synonyms " +
-                "WHERE curie2 IN (:curies)")
-                .setParameter("curies", curies)
+                "WHERE curie2 " + inList("curies", "text"))
+                .setParameter("curies", listValue(curies))
                 .getResultList();
         Map<String, List<String>> synonymMap = new HashMap<>(curies.size());
         for (Object[] row : results) {
@@ -446,16 +891,11 @@ public class LookupRepository {
         return session.createNativeQuery(
                         "SELECT curie1 " +
                                 "FROM concept_synonyms " +
-                                "WHERE curie2 IN (:curies)")
-                .setParameter("curies", curies)
+                                "WHERE curie2 " + inList("curies", "text"))
+                .setParameter("curies", listValue(curies))
                 .getResultList();
     }
 
-    @Cacheable("getTextMinedCuries")
-    public List<String> getTextMinedCuries() {
-        return session.createNativeQuery("SELECT curie FROM nodes").getResultList();
-    }
-
     @Transactional
     public void addSynonyms(List<List<String>> synonymsList) {
         StringBuilder insertBuilder = new StringBuilder("INSERT INTO concept_synonyms VALUES ");
@@ -0,0 +1,120 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+// An immutable curie <-> node id dictionary for the nodes table. Ids index straight into a String array and curies are found through an
+// open-addressed (linear probing) table of ints, so a lookup allocates nothing and the whole structure is two arrays.
+// Instances are never modified; LookupRepository swaps in a new one when the data is refreshed.
+public final class NodeDictionary {
+
+    public static final int NOT_FOUND = -1;
+
+    private final String[] curiesById;
+    private final int[] slots; // node id + 1 for each occupied slot, 0 for empty ones
+    private final int mask;
+    private final int size;
+
+    private NodeDictionary(String[] curiesById, int[] slots, int size) {
+        this.curiesById = curiesById;
+        this.slots = slots;
+        this.mask = slots.length - 1;
+        this.size = size;
+    }
+
+    public static NodeDictionary build(int[] ids, String[] curies) {
+        if (ids.length != curies.length) {
+            throw new IllegalArgumentException("Got " + ids.length + " ids for " + curies.length + " curies");
+        }
+        int maxId = -1;
+        for (int id : ids) {
+            if (id < 0 || id == Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Node id out of range: " + id);
+            }
+            maxId = Math.max(maxId, id);
+        }
+        String[] curiesById = new String[maxId + 1];
+        // Keep the table at most half full so probe sequences stay short.
+        int capacity = Integer.highestOneBit(Math.max(ids.length, 1) * 2 - 1) << 1;
+        int[] slots = new int[Math.max(capacity, 2)];
+        int mask = slots.length - 1;
+        int size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            String curie = curies[i];
+            if (curie == null || curiesById[ids[i]] != null) {
+                continue;
+            }
+            int slot = hash(curie) & mask;
+            boolean duplicate = false;
+            while (slots[slot] != 0) {
+                if (curiesById[slots[slot] - 1].equals(curie)) {
+                    duplicate = true;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (duplicate) {
+                continue;
+            }
+            curiesById[ids[i]] = curie;
+            slots[slot] = ids[i] + 1;
+            size++;
+        }
+        return new NodeDictionary(curiesById, slots, size);
+    }
+
+    public int getId(String curie) {
+        if (curie == null) {
+            return NOT_FOUND;
+        }
+        int slot = hash(curie) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (curiesById[id].equals(curie)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    public boolean contains(String curie) {
+        return getId(curie) != NOT_FOUND;
+    }
+
+    public String getCurie(int id) {
+        if (id < 0 || id >= curiesById.length) {
+            return null;
+        }
+        return curiesById[id];
+    }
+
+    // Ids for the known curies, in input order and without repeats; unknown curies are skipped, as they were by the SQL lookup.
+    public int[] getIds(Collection<String> curies) {
+        int[] ids = new int[curies.size()];
+        IntSet seen = new IntSet(curies.size());
+        int count = 0;
+        for (String curie : curies) {
+            int id = getId(curie);
+            if (id != NOT_FOUND && seen.add(id)) {
+                ids[count++] = id;
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // One more than the largest node id, i.e. the length an array indexed by node id needs.
+    public int getIdBound() {
+        return curiesById.length;
+    }
+
+    // String.hashCode() is cached per instance, but its low bits cluster for curies that share a prefix, so spread them before masking.
+    private static int hash(String curie) {
+        int h = curie.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
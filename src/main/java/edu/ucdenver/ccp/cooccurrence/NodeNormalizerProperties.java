@@ -0,0 +1,156 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+// Settings for NodeNormalizerService, e.g.
+//   sri.url=https://nodenorm.ci.transltr.io/1.3/
+//   sri.max-in-flight=4
+//   sri.batch-size.initial=1000
+//   sri.breaker.failure-threshold=5
+//   sri.hedge.enabled=true
+// The per-curie result cache is configured separately under sri.cache (see NormalizedNodeCache).
+@ConfigurationProperties(prefix = "sri")
+public class NodeNormalizerProperties {
+
+    private String url;
+    private int maxInFlight = 4;
+    private final BatchSize batchSize = new BatchSize();
+    // The per-request latency the batch size is adjusted towards.
+    private Duration batchTargetLatency = Duration.ofSeconds(2);
+    // The longest a whole normalization may take; callers can ask for less. Batches that can't finish in time contribute nothing.
+    private Duration deadline = Duration.ofSeconds(5);
+    // The longest a single request may wait for its response.
+    private Duration readTimeout = Duration.ofSeconds(10);
+    private final Breaker breaker = new Breaker();
+    private final Hedge hedge = new Hedge();
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public BatchSize getBatchSize() {
+        return batchSize;
+    }
+
+    public Duration getBatchTargetLatency() {
+        return batchTargetLatency;
+    }
+
+    public void setBatchTargetLatency(Duration batchTargetLatency) {
+        this.batchTargetLatency = batchTargetLatency;
+    }
+
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(Duration deadline) {
+        this.deadline = deadline;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public Breaker getBreaker() {
+        return breaker;
+    }
+
+    public Hedge getHedge() {
+        return hedge;
+    }
+
+    public static class BatchSize {
+        private int initial = 1000;
+        private int min = 100;
+        private int max = 5000;
+
+        public int getInitial() {
+            return initial;
+        }
+
+        public void setInitial(int initial) {
+            this.initial = initial;
+        }
+
+        public int getMin() {
+            return min;
+        }
+
+        public void setMin(int min) {
+            this.min = min;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        public void setMax(int max) {
+            this.max = max;
+        }
+    }
+
+    public static class Breaker {
+        // Consecutive failed batches that open the breaker.
+        private int failureThreshold = 5;
+        // How long an open breaker skips the Node Normalizer before letting a trial request through.
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+    }
+
+    public static class Hedge {
+        // Whether a batch still unanswered after the 95th percentile batch latency is sent a second time.
+        private boolean enabled = true;
+        // The hedge is never sent sooner than this, however fast recent batches were.
+        private Duration minDelay = Duration.ofMillis(100);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getMinDelay() {
+            return minDelay;
+        }
+
+        public void setMinDelay(Duration minDelay) {
+            this.minDelay = minDelay;
+        }
+    }
+}
@@ -4,63 +4,190 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import edu.ucdenver.ccp.cooccurrence.TRAPI.Json;
 import io.netty.channel.ChannelOption;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.reactive.function.client.WebClientRequestException;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
+// Calls to the Node Normalizer never hold up a lookup for long: every normalization has a deadline, after which unanswered batches
+// contribute nothing; a circuit breaker skips the service entirely after repeated failures; and a batch still unanswered after the
+// 95th percentile batch latency is sent again, taking whichever answer comes first. Whatever happens, callers get the nodes that were
+// normalized in time and fall back to the local labels and categories for the rest. getStatistics reports all of it.
 @Service
 public class NodeNormalizerService {
 
+    private static final int HEDGE_MIN_SAMPLES = 20;
+
     private final WebClient webClient;
     private final ObjectMapper objectMapper;
+    private final int maxInFlight;
+    private final AdaptiveBatchSize batchSize;
+    private final NormalizedNodeCache cache;
+    private final Duration deadline;
+    private final CircuitBreaker breaker;
+    private final boolean hedge;
+    private final long hedgeMinDelayNanos;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong requestedBatches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong deadlineSkips = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
 
-    public NodeNormalizerService(WebClient.Builder webClientBuilder, @Value("${sri.url}") String endpoint) {
-        HttpClient httpClient = HttpClient.create().option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
+    public NodeNormalizerService(WebClient.Builder webClientBuilder, NodeNormalizerProperties properties, NormalizedNodeCache cache) {
+        HttpClient httpClient = HttpClient.create()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
+                .responseTimeout(properties.getReadTimeout());
         webClient = webClientBuilder
                 .clientConnector(new ReactorClientHttpConnector(httpClient))
-                .baseUrl(endpoint)
+                .baseUrl(properties.getUrl())
                 .build();
-        objectMapper = new ObjectMapper();
+        objectMapper = Json.MAPPER;
+        this.maxInFlight = properties.getMaxInFlight();
+        this.batchSize = new AdaptiveBatchSize(properties.getBatchSize().getInitial(), properties.getBatchSize().getMin(),
+                properties.getBatchSize().getMax(), properties.getBatchTargetLatency());
+        this.cache = cache;
+        this.deadline = properties.getDeadline();
+        this.breaker = new CircuitBreaker(properties.getBreaker().getFailureThreshold(), properties.getBreaker().getOpenDuration());
+        this.hedge = properties.getHedge().isEnabled();
+        this.hedgeMinDelayNanos = properties.getHedge().getMinDelay().toNanos();
     }
 
-    public JsonNode getNormalizedNodesInBatches(List<String> curies, int batchSize) {
-        if (curies.size() == 0) {
-            return objectMapper.createObjectNode();
+    public JsonNode getNormalizedNodesInBatches(List<String> curies) {
+        return normalizeNodes(curies).block();
+    }
+
+    public Mono<ObjectNode> normalizeNodes(Collection<String> curies) {
+        return normalizeNodes(curies, deadline);
+    }
+
+    // Answers what it can from the NormalizedNodeCache, then splits the remaining (deduplicated) curies into batches and keeps up to
+    // maxInFlight of them in flight at once, merging each response into the result as it arrives. Batches are cut lazily, as slots free up,
+    // so each one is sized from the latency of the ones before it. The whole call finishes within budget (or sri.deadline, if that is
+    // shorter); a batch that fails or runs out of time is logged and contributes nothing (and isn't cached).
+    public Mono<ObjectNode> normalizeNodes(Collection<String> curies, Duration budget) {
+        Set<String> uniqueCuries = new LinkedHashSet<>(curies);
+        ObjectNode cached = objectMapper.createObjectNode();
+        cache.getAllPresent(uniqueCuries).forEach(cached::set);
+        List<String> misses = new ArrayList<>(uniqueCuries.size() - cached.size());
+        for (String curie : uniqueCuries) {
+            if (!cached.has(curie)) {
+                misses.add(curie);
+            }
         }
-        if (curies.size() < batchSize) {
-            return getNormalizedNodes(curies);
+        if (misses.isEmpty()) {
+            return Mono.just(cached);
         }
-        ObjectNode totalResults = objectMapper.createObjectNode();
-        for (int i = 0; i < curies.size(); i += batchSize) {
-            int endIndex = Math.min(i + batchSize, curies.size());
-            List<String> curiesSubList = curies.subList(i, endIndex);
-            JsonNode partialResults = getNormalizedNodes(curiesSubList);
-            Iterator<String> keyIterator = partialResults.fieldNames();
-            while(keyIterator.hasNext()) {
-                String key = keyIterator.next();
-                JsonNode property = partialResults.get(key);
-                totalResults.set(key, property);
+        long deadlineNanos = System.nanoTime() + Math.min(budget.toNanos(), deadline.toNanos());
+        Flux<List<String>> batches = Flux.generate(() -> 0, (offset, sink) -> {
+            if (offset >= misses.size()) {
+                sink.complete();
+                return offset;
             }
-        }
-        return totalResults;
+            int endIndex = Math.min(offset + batchSize.next(), misses.size());
+            sink.next(misses.subList(offset, endIndex));
+            return endIndex;
+        });
+        return batches
+                .flatMap(batch -> requestBatch(batch, deadlineNanos), maxInFlight)
+                .collect(objectMapper::createObjectNode, ObjectNode::setAll)
+                .map(fetched -> {
+                    fetched.setAll(cached);
+                    return fetched;
+                });
     }
 
     public JsonNode getNormalizedNodes(List<String> curies) {
         if (curies.size() == 0) {
             return objectMapper.createObjectNode();
         }
-        try {
+        return requestBatch(curies, System.nanoTime() + deadline.toNanos()).block();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("breaker_state", breaker.getState().name());
+        statistics.put("breaker_opened", breaker.getTimesOpened());
+        statistics.put("skipped_by_breaker", breaker.getRejectedCount());
+        statistics.put("skipped_by_deadline", deadlineSkips.get());
+        statistics.put("batches", requestedBatches.get());
+        statistics.put("failures", failures.get());
+        statistics.put("timeouts", timeouts.get());
+        statistics.put("hedges", hedges.get());
+        statistics.put("hedge_wins", hedgeWins.get());
+        statistics.put("next_batch_size", batchSize.next());
+        Map<String, Double> latency = new LinkedHashMap<>();
+        latency.put("p50", latencies.getPercentile(0.5) / 1e6);
+        latency.put("p90", latencies.getPercentile(0.9) / 1e6);
+        latency.put("p95", latencies.getPercentile(0.95) / 1e6);
+        latency.put("p99", latencies.getPercentile(0.99) / 1e6);
+        latency.put("max", latencies.getPercentile(1.0) / 1e6);
+        statistics.put("batch_latency_ms", latency);
+        return statistics;
+    }
+
+    // One batch, or an empty node straight away when the deadline has already passed or the breaker is open. Each batch counts once towards
+    // the breaker however many requests it took; a batch cancelled from outside (the caller gave up) doesn't count at all.
+    private Mono<ObjectNode> requestBatch(List<String> curies, long deadlineNanos) {
+        return Mono.defer(() -> {
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0) {
+                deadlineSkips.incrementAndGet();
+                return Mono.just(objectMapper.createObjectNode());
+            }
+            if (!breaker.tryAcquire()) {
+                return Mono.just(objectMapper.createObjectNode());
+            }
+            requestedBatches.incrementAndGet();
+            Mono<ObjectNode> request = send(curies);
+            long hedgeDelay = getHedgeDelayNanos();
+            if (hedgeDelay > 0 && hedgeDelay < remaining) {
+                Mono<ObjectNode> hedgeRequest = Mono.defer(() -> {
+                            hedges.incrementAndGet();
+                            return send(curies);
+                        })
+                        .doOnNext(response -> hedgeWins.incrementAndGet())
+                        .delaySubscription(Duration.ofNanos(hedgeDelay));
+                request = Mono.firstWithValue(request, hedgeRequest);
+            }
+            return request
+                    .timeout(Duration.ofNanos(remaining))
+                    .doOnSuccess(response -> {
+                        breaker.recordSuccess();
+                        if (response != null) {
+                            cache.putAll(curies, response);
+                        }
+                    })
+                    .doOnCancel(breaker::release)
+                    .onErrorResume(ex -> {
+                        breaker.recordFailure();
+                        failures.incrementAndGet();
+                        if (ex instanceof TimeoutException) {
+                            timeouts.incrementAndGet();
+                            CooccurrenceController.logger.warn("Node Normalizer batch of " + curies.size() + " curies missed its deadline");
+                        } else {
+                            CooccurrenceController.logger.warn("Node Normalizer request issue: " + ex);
+                        }
+                        return Mono.just(objectMapper.createObjectNode());
+                    });
+        }).defaultIfEmpty(objectMapper.createObjectNode());
+    }
+
+    private Mono<ObjectNode> send(List<String> curies) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
             ObjectNode requestNode = objectMapper.createObjectNode();
             requestNode.put("conflate", true);
             requestNode.set("curies", objectMapper.convertValue(curies, ArrayNode.class));
@@ -70,14 +197,20 @@ public class NodeNormalizerService {
                     .bodyValue(requestNode)
                     .retrieve()
                     .bodyToMono(ObjectNode.class)
-                    .block();
-        } catch (WebClientRequestException wex) {
-            System.out.println("Request issue");
-            return objectMapper.createObjectNode();
-        } catch (WebClientResponseException wex) {
-            System.out.println("Response issue");
-            return objectMapper.createObjectNode();
+                    .doOnSuccess(response -> {
+                        long elapsed = System.nanoTime() - start;
+                        latencies.record(elapsed);
+                        batchSize.record(curies.size(), elapsed);
+                    });
+        });
+    }
+
+    // Batch sizes are steered towards a target latency, so the batch latency distribution is a fair guide to when a batch is late.
+    private long getHedgeDelayNanos() {
+        if (!hedge || latencies.getCount() < HEDGE_MIN_SAMPLES) {
+            return 0;
         }
+        return Math.max(latencies.getPercentile(0.95), hedgeMinDelayNanos);
     }
 
     public String getNodeName(String curie, JsonNode normalizedNodes) {
@@ -98,7 +231,7 @@ public class NodeNormalizerService {
                 return objectMapper.readerForListOf(String.class).readValue(typeNode);
             }
         } catch (IOException iex) {
-            System.out.println(iex.getLocalizedMessage());
+            CooccurrenceController.logger.warn("Unreadable Node Normalizer types for " + curie + ": " + iex.getLocalizedMessage());
         }
         return List.of("biolink:Entity");
     }
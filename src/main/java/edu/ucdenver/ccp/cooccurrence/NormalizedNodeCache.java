@@ -0,0 +1,203 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import edu.ucdenver.ccp.cooccurrence.TRAPI.Json;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// Node Normalizer results per curie, trimmed to the fields this service reads (id, type and the identifiers of equivalent_identifiers).
+// Curies the Node Normalizer doesn't know are kept as negative (null) entries with their own, shorter TTL so they are retried sooner.
+// Both TTLs run from when the result was fetched, not from when it entered this cache, so entries read back from the spill file keep
+// their original expiry. The cache is bounded by entry count and is listed under /cache as "normalizedNodes".
+// When sri.cache.file is set, live entries are written there as JSON lines on shutdown and read back at startup.
+@Component
+public class NormalizedNodeCache implements DisposableBean {
+
+    public static final String REGION = "normalizedNodes";
+
+    private final ObjectMapper objectMapper = Json.MAPPER;
+    private final Cache<String, Entry> cache;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Path file;
+
+    public NormalizedNodeCache(@Value("${sri.cache.maximum-size:1000000}") long maximumSize,
+                               @Value("${sri.cache.ttl:1d}") Duration ttl,
+                               @Value("${sri.cache.negative-ttl:1h}") Duration negativeTtl,
+                               @Value("${sri.cache.file:}") String file,
+                               LookupCacheManager cacheManager) {
+        this.ttlMillis = ttl.toMillis();
+        this.negativeTtlMillis = negativeTtl.toMillis();
+        this.file = file.isEmpty() ? null : Paths.get(file);
+        CacheStatsCounter statsCounter = new CacheStatsCounter();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats(() -> statsCounter)
+                .expireAfter(new EntryExpiry())
+                .build();
+        if (cacheManager != null) {
+            cacheManager.registerCache(REGION, cache, statsCounter);
+        }
+        if (this.file != null) {
+            load();
+        }
+    }
+
+    // The cached result for each curie that has one; a negative entry maps to a NullNode, just as the Node Normalizer returns null.
+    // The nodes are shared between requests and must not be modified.
+    public Map<String, JsonNode> getAllPresent(Collection<String> curies) {
+        Map<String, JsonNode> nodes = new HashMap<>();
+        for (Map.Entry<String, Entry> entry : cache.getAllPresent(curies).entrySet()) {
+            nodes.put(entry.getKey(), entry.getValue().node);
+        }
+        return nodes;
+    }
+
+    // Caches the response for every requested curie it has a field for. Curies missing from the response altogether (a failed batch)
+    // are left uncached so they are asked for again.
+    public void putAll(Collection<String> curies, JsonNode response) {
+        long now = System.currentTimeMillis();
+        for (String curie : curies) {
+            if (response.has(curie)) {
+                cache.put(curie, new Entry(trim(response.get(curie)), now));
+            }
+        }
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void destroy() {
+        if (file != null) {
+            save();
+        }
+    }
+
+    void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             MappingIterator<JsonNode> lines = objectMapper.readerFor(JsonNode.class).readValues(reader)) {
+            while (lines.hasNext()) {
+                JsonNode line = lines.next();
+                Entry entry = new Entry(line.get("node"), line.get("fetched").asLong());
+                if (entry.expiresAt(ttlMillis, negativeTtlMillis) > now) {
+                    cache.put(line.get("curie").asText(), entry);
+                    loaded++;
+                }
+            }
+            CooccurrenceController.logger.info("Loaded " + loaded + " normalized nodes from " + file);
+        } catch (IOException | RuntimeException ex) {
+            CooccurrenceController.logger.warn("Could not read normalized node cache " + file + ": " + ex.getMessage());
+        }
+    }
+
+    // Written under a temporary name and moved into place, so a crash mid-write leaves the previous file intact.
+    void save() {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        int saved = 0;
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8);
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+                generator.setRootValueSeparator(null);
+                for (Map.Entry<String, Entry> entry : cache.asMap().entrySet()) {
+                    generator.writeStartObject();
+                    generator.writeStringField("curie", entry.getKey());
+                    generator.writeNumberField("fetched", entry.getValue().fetchedAt);
+                    generator.writeFieldName("node");
+                    objectMapper.writeTree(generator, entry.getValue().node);
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                    saved++;
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            CooccurrenceController.logger.info("Saved " + saved + " normalized nodes to " + file);
+        } catch (IOException ex) {
+            CooccurrenceController.logger.warn("Could not write normalized node cache " + file + ": " + ex.getMessage());
+        }
+    }
+
+    private JsonNode trim(JsonNode node) {
+        if (node == null || !node.isObject()) {
+            return NullNode.getInstance();
+        }
+        ObjectNode trimmed = objectMapper.createObjectNode();
+        if (node.has("id")) {
+            trimmed.set("id", node.get("id"));
+        }
+        if (node.has("type")) {
+            trimmed.set("type", node.get("type"));
+        }
+        if (node.has("equivalent_identifiers")) {
+            ArrayNode identifiers = trimmed.putArray("equivalent_identifiers");
+            for (JsonNode identifier : node.get("equivalent_identifiers")) {
+                if (identifier.hasNonNull("identifier")) {
+                    identifiers.addObject().set("identifier", identifier.get("identifier"));
+                }
+            }
+        }
+        return trimmed;
+    }
+
+    private static final class Entry {
+        private final JsonNode node;
+        private final long fetchedAt; // wall clock millis, so it survives a restart
+
+        private Entry(JsonNode node, long fetchedAt) {
+            this.node = node == null ? NullNode.getInstance() : node;
+            this.fetchedAt = fetchedAt;
+        }
+
+        private long expiresAt(long ttlMillis, long negativeTtlMillis) {
+            return fetchedAt + (node.isNull() ? negativeTtlMillis : ttlMillis);
+        }
+    }
+
+    private final class EntryExpiry implements Expiry<String, Entry> {
+
+        @Override
+        public long expireAfterCreate(String curie, Entry entry, long currentTime) {
+            long remainingMillis = entry.expiresAt(ttlMillis, negativeTtlMillis) - System.currentTimeMillis();
+            return Duration.ofMillis(Math.max(0, remainingMillis)).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String curie, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(curie, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String curie, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
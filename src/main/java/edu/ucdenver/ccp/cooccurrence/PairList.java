@@ -0,0 +1,65 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import java.util.Arrays;
+
+// A growable list of (concept1, concept2) node id pairs, each packed into one long as in PairTable, so a lookup's cooccurring pairs cost 8
+// bytes apiece rather than a List.of(Integer, Integer) and its boxes. Walk a list by index, from 0 to size().
+public final class PairList {
+
+    private long[] pairs;
+    private int size;
+
+    public PairList() {
+        this(16);
+    }
+
+    public PairList(int capacity) {
+        pairs = new long[Math.max(capacity, 1)];
+    }
+
+    public void add(int concept1, int concept2) {
+        if (size == pairs.length) {
+            pairs = Arrays.copyOf(pairs, size * 2);
+        }
+        pairs[size++] = PairTable.pairKey(concept1, concept2);
+    }
+
+    public int getConcept1(int index) {
+        return (int) (pairs[checkIndex(index)] >>> 32);
+    }
+
+    public int getConcept2(int index) {
+        return (int) pairs[checkIndex(index)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // A copy without repeated pairs, ordered by concept1 then concept2.
+    public PairList distinct() {
+        long[] sorted = Arrays.copyOf(pairs, size);
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        PairList distinct = new PairList(0);
+        distinct.pairs = sorted;
+        distinct.size = count;
+        return distinct;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Pair " + index + " of " + size);
+        }
+        return index;
+    }
+}
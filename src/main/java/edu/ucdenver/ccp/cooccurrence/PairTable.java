@@ -0,0 +1,168 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+// A sparse table of values keyed by (concept1, concept2, document part), as returned by the cooccurrence lookups. Concepts are node ids from
+// the table's NodeDictionary and each pair is packed into a single long, so a probe hashes one primitive and allocates nothing; the old
+// concatenated curie + curie + part strings were rebuilt and rehashed on every probe, and were ambiguous as well ("A:1" + "2B:3" and
+// "A:12" + "B:3" are the same string). Pairs live in insertion order in parallel arrays, one value slot per DocumentPart ordinal, and are found
+// through an open-addressed (linear probing) table of pair indexes, as in NodeDictionary. Walk a table by pair index, from 0 to pairCount().
+// Tables are filled by one thread and only read once they are returned.
+public final class PairTable<V> {
+
+    private static final int PARTS = DocumentPart.COUNT;
+
+    private final NodeDictionary dictionary;
+    private long[] keys = new long[8];
+    private Object[] values = new Object[8 * PARTS]; // pair index * PARTS + part
+    private int[] slots = new int[16]; // pair index + 1 for each occupied slot, 0 for empty ones
+    private int pairCount;
+    private int size;
+
+    public PairTable(NodeDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    // The dictionary the concept ids refer to.
+    public NodeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public void put(int concept1, int concept2, int part, V value) {
+        int index = indexOf(pairKey(concept1, concept2), true);
+        int slot = index * PARTS + checkPart(part);
+        if (values[slot] == null) {
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int concept1, int concept2, int part) {
+        int index = indexOf(pairKey(concept1, concept2), false);
+        return index < 0 ? null : (V) values[index * PARTS + checkPart(part)];
+    }
+
+    public V computeIfAbsent(int concept1, int concept2, int part, Supplier<V> supplier) {
+        V value = get(concept1, concept2, part);
+        if (value == null) {
+            value = supplier.get();
+            put(concept1, concept2, part, value);
+        }
+        return value;
+    }
+
+    // By curie, for callers that don't have node ids to hand. Curies outside the dictionary have no entries.
+    public V get(String concept1, String concept2, DocumentPart documentPart) {
+        int id1 = dictionary.getId(concept1);
+        int id2 = dictionary.getId(concept2);
+        if (id1 == NodeDictionary.NOT_FOUND || id2 == NodeDictionary.NOT_FOUND) {
+            return null;
+        }
+        return get(id1, id2, documentPart.ordinal());
+    }
+
+    public int getConcept1(int pair) {
+        return (int) (keys[checkPair(pair)] >>> 32);
+    }
+
+    public int getConcept2(int pair) {
+        return (int) keys[checkPair(pair)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getValue(int pair, int part) {
+        return (V) values[checkPair(pair) * PARTS + checkPart(part)];
+    }
+
+    // The number of distinct (concept1, concept2) pairs.
+    public int pairCount() {
+        return pairCount;
+    }
+
+    // The number of (concept1, concept2, part) entries.
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // For CacheWeigher: the values, with an empty slot for each part a pair has no entry in.
+    Object[] getValues() {
+        return Arrays.copyOf(values, pairCount * PARTS);
+    }
+
+    // The retained size of the key and slot arrays, not counting the values or the (shared) dictionary.
+    long getKeyBytes() {
+        return (long) keys.length * Long.BYTES + (long) slots.length * Integer.BYTES;
+    }
+
+    // Node ids are never negative, so the pair is just concept1 in the high half and concept2 in the low half.
+    static long pairKey(int concept1, int concept2) {
+        return ((long) concept1 << 32) | (concept2 & 0xFFFFFFFFL);
+    }
+
+    private int indexOf(long key, boolean insert) {
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != 0) {
+            int index = slots[slot] - 1;
+            if (keys[index] == key) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!insert) {
+            return -1;
+        }
+        if (pairCount == keys.length) {
+            keys = Arrays.copyOf(keys, pairCount * 2);
+            values = Arrays.copyOf(values, pairCount * 2 * PARTS);
+        }
+        int index = pairCount++;
+        keys[index] = key;
+        slots[slot] = index + 1;
+        // Keep the table at most half full so probe sequences stay short.
+        if (pairCount * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int index = 0; index < pairCount; index++) {
+            int slot = hash(keys[index]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+        }
+    }
+
+    private int checkPair(int pair) {
+        if (pair < 0 || pair >= pairCount) {
+            throw new IndexOutOfBoundsException("Pair " + pair + " of " + pairCount);
+        }
+        return pair;
+    }
+
+    private static int checkPart(int part) {
+        if (part < 0 || part >= PARTS) {
+            throw new IllegalArgumentException("Unknown document part: " + part);
+        }
+        return part;
+    }
+
+    // Neighbouring ids differ only in their low bits, so mix the whole key before masking.
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
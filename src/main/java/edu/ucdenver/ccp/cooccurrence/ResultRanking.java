@@ -0,0 +1,56 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import edu.ucdenver.ccp.cooccurrence.entities.ConceptPair;
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+import edu.ucdenver.ccp.cooccurrence.entities.Metrics;
+
+import java.util.function.ToDoubleFunction;
+
+// The metrics lookup results can be ranked by when they are limited (see ConceptPairCollector). A pair is ranked by its best part.
+public enum ResultRanking {
+    NGD("ngd", Metrics::getNormalizedGoogleDistance, true),
+    NPMI("npmi", Metrics::getNormalizedPointwiseMutualInformation, false),
+    PMI("pmi", Metrics::getPointwiseMutualInformation, false),
+    PAIR_COUNT("pair_count", Metrics::getPairCount, false);
+
+    private final String name;
+    private final ToDoubleFunction<Metrics> metric;
+    private final boolean ascending;
+
+    ResultRanking(String name, ToDoubleFunction<Metrics> metric, boolean ascending) {
+        this.name = name;
+        this.metric = metric;
+        this.ascending = ascending;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Higher is better whichever way the metric runs. A pair without a usable value (no metrics, or NaN in every part) scores lowest.
+    public double score(ConceptPair pair) {
+        double best = Double.NEGATIVE_INFINITY;
+        for (DocumentPart part : DocumentPart.values()) {
+            Metrics metrics = pair.getPairMetrics(part);
+            if (metrics == null) {
+                continue;
+            }
+            double value = metric.applyAsDouble(metrics);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            best = Math.max(best, ascending ? -value : value);
+        }
+        return best;
+    }
+
+    // Null for names we don't know.
+    public static ResultRanking fromName(String name) {
+        for (ResultRanking ranking : values()) {
+            if (ranking.name.equalsIgnoreCase(name)) {
+                return ranking;
+            }
+        }
+        return null;
+    }
+}
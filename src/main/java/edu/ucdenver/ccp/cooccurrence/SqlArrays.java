@@ -0,0 +1,63 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import java.util.Collection;
+
+// Helpers for binding a whole list as a single PostgreSQL array parameter. Hibernate native queries can't bind java.sql.Array values directly,
+// so the list is written as an array literal ('{1,2,3}' or '{"a","b"}') and cast on the database side with CAST(:p AS <type>[]).
+// The statement text stays the same no matter how many values are sent, which lets PostgreSQL reuse the plan.
+public final class SqlArrays {
+
+    private SqlArrays() {
+    }
+
+    public static String anyOf(String parameter, String sqlType) {
+        return "= ANY(CAST(:" + parameter + " AS " + sqlType + "[]))";
+    }
+
+    public static String toArrayLiteral(Collection<?> values) {
+        StringBuilder builder = new StringBuilder(values.size() * 16 + 2);
+        builder.append('{');
+        boolean first = true;
+        for (Object value : values) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            if (value == null) {
+                builder.append("NULL");
+            } else if (value instanceof Number) {
+                builder.append(value);
+            } else {
+                appendQuoted(builder, value.toString());
+            }
+        }
+        builder.append('}');
+        return builder.toString();
+    }
+
+    public static String toArrayLiteral(int[] values) {
+        StringBuilder builder = new StringBuilder(values.length * 8 + 2);
+        builder.append('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(values[i]);
+        }
+        builder.append('}');
+        return builder.toString();
+    }
+
+    // Array elements are double-quoted so that commas, braces, whitespace and the word NULL inside a curie are read literally.
+    private static void appendQuoted(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        builder.append('"');
+    }
+}
@@ -1,10 +1,12 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.util.*;
 
 public class Analysis {
@@ -89,7 +91,7 @@ public class Analysis {
     // endregion
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode json = om.createObjectNode();
         json.put("resource_id", this.resourceId);
         ObjectNode edgeBindingsNode = om.createObjectNode();
@@ -129,6 +131,39 @@ public class Analysis {
         return json;
     }
 
+    public void writeJSON(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("resource_id", this.resourceId);
+        generator.writeObjectFieldStart("edge_bindings");
+        for (Map.Entry<String, List<EdgeBinding>> binding : this.edgeBindings.entrySet()) {
+            generator.writeArrayFieldStart(binding.getKey());
+            for (EdgeBinding edgeBinding : binding.getValue()) {
+                edgeBinding.writeJSON(generator);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+        if (this.score != null) {
+            generator.writeNumberField("score", this.score);
+        }
+        if (this.scoringMethod != null) {
+            generator.writeStringField("scoring_method", this.scoringMethod);
+        }
+        if (this.supportGraphs.size() > 0) {
+            generator.writeArrayFieldStart("support_graphs");
+            for (AuxiliaryGraph graph : this.supportGraphs) {
+                graph.writeJSON(generator);
+            }
+            generator.writeEndArray();
+        }
+        Attribute.writeAttributes(generator, this.attributes);
+        for (Map.Entry<String, JsonNode> property : this.additionalProperties.entrySet()) {
+            generator.writeFieldName(property.getKey());
+            generator.writeTree(property.getValue());
+        }
+        generator.writeEndObject();
+    }
+
     public static Analysis parseJSON(JsonNode json) {
         if (!json.hasNonNull("resource_id") || !json.hasNonNull("edge_bindings")) {
             return null;
@@ -1,10 +1,12 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -94,11 +96,11 @@ public class Attribute {
     }
 
     public void addAttribute(Attribute attribute) {
-        this.attributes.add(attribute);
+        getAttributes().add(attribute);
     }
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode attributeNode = om.createObjectNode();
         attributeNode.put("attribute_type_id", this.attributeTypeId);
         if (this.originalAttributeName != null) {
@@ -131,9 +133,10 @@ public class Attribute {
         if (this.description != null) {
             attributeNode.put("description", this.description);
         }
-        if (this.attributes.size() > 0) {
-            ArrayNode attributesNode = (new ObjectMapper()).createArrayNode();
-            for (Attribute attribute : this.attributes) {
+        List<Attribute> attributes = getAttributes();
+        if (attributes.size() > 0) {
+            ArrayNode attributesNode = Json.MAPPER.createArrayNode();
+            for (Attribute attribute : attributes) {
                 attributesNode.add(attribute.toJSON());
             }
             attributeNode.set("attributes", attributesNode);
@@ -141,6 +144,61 @@ public class Attribute {
         return attributeNode;
     }
 
+    // Writes what toJSON returns straight to the generator, without building a tree (the generator needs an ObjectMapper as its codec).
+    public void writeJSON(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("attribute_type_id", this.attributeTypeId);
+        if (this.originalAttributeName != null) {
+            generator.writeStringField("original_attribute_name", this.originalAttributeName);
+        }
+        if (this.value instanceof String) {
+            generator.writeStringField("value", (String) this.value);
+        } else if (this.value instanceof Integer) {
+            generator.writeNumberField("value", (Integer) this.value);
+        } else if (this.value instanceof BigInteger) {
+            generator.writeFieldName("value");
+            generator.writeNumber((BigInteger) this.value);
+        } else if (this.value instanceof Float) {
+            generator.writeNumberField("value", (Float) this.value);
+        } else if (this.value instanceof Double) {
+            generator.writeNumberField("value", (Double) this.value);
+        } else if (this.value instanceof Boolean) {
+            generator.writeBooleanField("value", (Boolean) this.value);
+        } else if (this.value instanceof List) {
+            generator.writeObjectField("value", this.value);
+        }
+        if (this.valueTypeId != null) {
+            generator.writeStringField("value_type_id", this.valueTypeId);
+        }
+        if (this.attributeSource != null) {
+            generator.writeStringField("attribute_source", this.attributeSource);
+        }
+        if (this.valueUrl != null) {
+            generator.writeStringField("value_url", this.valueUrl);
+        }
+        if (this.description != null) {
+            generator.writeStringField("description", this.description);
+        }
+        writeSubAttributes(generator);
+        generator.writeEndObject();
+    }
+
+    // Writes the "attributes" field, if any. A subclass that can write its sub-attributes without building them overrides this.
+    protected void writeSubAttributes(JsonGenerator generator) throws IOException {
+        writeAttributes(generator, this.attributes);
+    }
+
+    // An "attributes" array, or nothing for an empty list, as the toJSON methods do.
+    public static void writeAttributes(JsonGenerator generator, List<Attribute> attributes) throws IOException {
+        if (attributes.size() > 0) {
+            generator.writeArrayFieldStart("attributes");
+            for (Attribute attribute : attributes) {
+                attribute.writeJSON(generator);
+            }
+            generator.writeEndArray();
+        }
+    }
+
     public static Attribute parseJSON(JsonNode jsonAttribute) {
         if (!jsonAttribute.hasNonNull("attribute_type_id") || !jsonAttribute.hasNonNull("value")) {
             return null;
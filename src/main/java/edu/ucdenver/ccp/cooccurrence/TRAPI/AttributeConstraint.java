@@ -92,7 +92,7 @@ public class AttributeConstraint {
     }
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode constraintNode = om.createObjectNode();
         constraintNode.put("id", this.getId());
         constraintNode.put("name", this.getName());
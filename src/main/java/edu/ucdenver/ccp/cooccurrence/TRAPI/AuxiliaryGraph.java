@@ -1,10 +1,12 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.util.*;
 
 public class AuxiliaryGraph {
@@ -47,7 +49,7 @@ public class AuxiliaryGraph {
     // endregion
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode json = om.createObjectNode();
         ArrayNode edgesNode = om.createArrayNode();
         for (String edge : this.edges) {
@@ -67,6 +69,21 @@ public class AuxiliaryGraph {
         return json;
     }
 
+    public void writeJSON(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("edges");
+        for (String edge : this.edges) {
+            generator.writeString(edge);
+        }
+        generator.writeEndArray();
+        Attribute.writeAttributes(generator, this.attributes);
+        for (Map.Entry<String, JsonNode> kv : this.additionalProperties.entrySet()) {
+            generator.writeFieldName(kv.getKey());
+            generator.writeTree(kv.getValue());
+        }
+        generator.writeEndObject();
+    }
+
     public static AuxiliaryGraph parseJSON(JsonNode json) {
         if (!json.hasNonNull("edges")) {
             return null;
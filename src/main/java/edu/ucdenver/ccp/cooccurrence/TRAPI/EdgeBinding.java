@@ -1,10 +1,12 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.util.*;
 
 public class EdgeBinding {
@@ -43,7 +45,7 @@ public class EdgeBinding {
     }
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode edge = om.createObjectNode();
         edge.put("id", this.id);
         if (this.attributes.size() > 0) {
@@ -59,6 +61,17 @@ public class EdgeBinding {
         return edge;
     }
 
+    public void writeJSON(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", this.id);
+        Attribute.writeAttributes(generator, this.attributes);
+        for (Map.Entry<String, JsonNode> kv : this.additionalProperties.entrySet()) {
+            generator.writeFieldName(kv.getKey());
+            generator.writeTree(kv.getValue());
+        }
+        generator.writeEndObject();
+    }
+
     public static EdgeBinding parseJSON(JsonNode edgeNode) {
         if (!edgeNode.hasNonNull("id")) {
             return null;
@@ -0,0 +1,14 @@
+package edu.ucdenver.ccp.cooccurrence.TRAPI;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// The one ObjectMapper for building, reading and writing TRAPI JSON. An ObjectMapper is thread-safe once configured, and creating one
+// (with its serializer caches) per toJSON call cost more than the nodes it built. It is left at the default configuration, which the
+// toJSON and writeJSON methods rely on to produce the same bytes.
+public final class Json {
+
+    public static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Json() {
+    }
+}
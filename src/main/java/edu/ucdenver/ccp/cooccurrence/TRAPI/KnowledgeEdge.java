@@ -1,10 +1,12 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -102,7 +104,7 @@ public class KnowledgeEdge {
     }
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode edgeNode = om.createObjectNode();
         edgeNode.put("subject", this.subject);
         edgeNode.put("object", this.object);
@@ -130,6 +132,29 @@ public class KnowledgeEdge {
         }
         return edgeNode;
     }
+
+    public void writeJSON(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("subject", this.subject);
+        generator.writeStringField("object", this.object);
+        generator.writeStringField("predicate", this.predicate);
+        if (this.sources.size() > 0) {
+            generator.writeArrayFieldStart("sources");
+            for (RetrievalSource source : this.sources) {
+                source.writeJSON(generator);
+            }
+            generator.writeEndArray();
+        }
+        Attribute.writeAttributes(generator, this.attributes);
+        if (this.qualifiers.size() > 0) {
+            generator.writeArrayFieldStart("qualifiers");
+            for (Qualifier qualifier : this.qualifiers) {
+                qualifier.writeJSON(generator);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
     public static KnowledgeEdge parseJSON(JsonNode jsonKEdge) {
         if (!jsonKEdge.hasNonNull("subject") || !jsonKEdge.hasNonNull("object") || !jsonKEdge.hasNonNull("predicate") ||
                 !jsonKEdge.hasNonNull("sources") || !jsonKEdge.get("sources").isArray()) {
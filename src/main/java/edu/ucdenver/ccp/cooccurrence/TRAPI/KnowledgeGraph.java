@@ -1,10 +1,12 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import javax.validation.constraints.NotNull;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -56,7 +58,7 @@ public class KnowledgeGraph {
         additionalProperties.put(key, value);
     }
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode graphNode = om.createObjectNode();
         ObjectNode nodes = om.createObjectNode();
         ObjectNode edges = om.createObjectNode();
@@ -74,6 +76,28 @@ public class KnowledgeGraph {
         return graphNode;
     }
 
+    // Streams the graph an edge at a time, so a large graph is never held as a tree as well.
+    public void writeJSON(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("nodes");
+        for (Map.Entry<String, KnowledgeNode> kv : this.nodes.entrySet()) {
+            generator.writeFieldName(kv.getKey());
+            kv.getValue().writeJSON(generator);
+        }
+        generator.writeEndObject();
+        generator.writeObjectFieldStart("edges");
+        for (Map.Entry<String, KnowledgeEdge> kv : this.edges.entrySet()) {
+            generator.writeFieldName(kv.getKey());
+            kv.getValue().writeJSON(generator);
+        }
+        generator.writeEndObject();
+        for (Map.Entry<String, JsonNode> kv : this.additionalProperties.entrySet()) {
+            generator.writeFieldName(kv.getKey());
+            generator.writeTree(kv.getValue());
+        }
+        generator.writeEndObject();
+    }
+
     @NotNull
     public static KnowledgeGraph parseJSON(JsonNode jsonKGraph) {
         KnowledgeGraph graph = new KnowledgeGraph();
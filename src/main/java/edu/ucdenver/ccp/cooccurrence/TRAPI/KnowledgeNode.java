@@ -1,10 +1,12 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -69,7 +71,7 @@ public class KnowledgeNode {
     }
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode nodeNode = om.createObjectNode();
         nodeNode.put("name", this.name);
         if (this.categories.size() > 0) {
@@ -85,6 +87,16 @@ public class KnowledgeNode {
         return nodeNode;
     }
 
+    public void writeJSON(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", this.name);
+        if (this.categories.size() > 0) {
+            generator.writeObjectField("categories", this.categories);
+        }
+        Attribute.writeAttributes(generator, this.attributes);
+        generator.writeEndObject();
+    }
+
     public static KnowledgeNode parseJSON(JsonNode jsonKNode) {
         KnowledgeNode node = new KnowledgeNode();
         if (jsonKNode.hasNonNull("name")) {
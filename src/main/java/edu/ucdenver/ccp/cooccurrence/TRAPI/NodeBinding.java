@@ -1,10 +1,12 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.util.*;
 
 public class NodeBinding {
@@ -53,7 +55,7 @@ public class NodeBinding {
     }
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode node = om.createObjectNode();
         node.put("id", this.id);
         if (this.queryId.length() > 0) {
@@ -72,6 +74,20 @@ public class NodeBinding {
         return node;
     }
 
+    public void writeJSON(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", this.id);
+        if (this.queryId.length() > 0) {
+            generator.writeStringField("query_id", this.queryId);
+        }
+        Attribute.writeAttributes(generator, this.attributes);
+        for (Map.Entry<String, JsonNode> kv : this.additionalProperties.entrySet()) {
+            generator.writeFieldName(kv.getKey());
+            generator.writeTree(kv.getValue());
+        }
+        generator.writeEndObject();
+    }
+
     public static NodeBinding parseJSON(JsonNode jsonNode) {
         if (!jsonNode.hasNonNull("id")) {
             return null;
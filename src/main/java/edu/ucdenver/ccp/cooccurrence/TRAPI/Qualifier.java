@@ -1,9 +1,11 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
+
 public class Qualifier {
     private String typeId;
     private String value;
@@ -28,7 +30,14 @@ public class Qualifier {
     }
 
     public JsonNode toJSON() {
-        return (new ObjectMapper()).convertValue(this, ObjectNode.class);
+        return Json.MAPPER.convertValue(this, ObjectNode.class);
+    }
+
+    public void writeJSON(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("typeId", this.typeId);
+        generator.writeStringField("value", this.value);
+        generator.writeEndObject();
     }
 
     public static Qualifier parseJSON(JsonNode qualifierNode) {
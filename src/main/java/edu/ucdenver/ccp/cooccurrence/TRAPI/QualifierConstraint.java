@@ -1,7 +1,6 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
@@ -29,7 +28,7 @@ public class QualifierConstraint {
     }
 
     public JsonNode toJSON() {
-        ArrayNode qualifierConstraintNode = (new ObjectMapper()).createArrayNode();
+        ArrayNode qualifierConstraintNode = Json.MAPPER.createArrayNode();
         for (Qualifier qualifier : this.qualifierList) {
             qualifierConstraintNode.add(qualifier.toJSON());
         }
@@ -97,7 +97,7 @@ public class QueryEdge {
     }
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode edgeNode = om.createObjectNode();
         if (this.knowledgeType != null) {
             edgeNode.put("knowledge_type", this.knowledgeType);
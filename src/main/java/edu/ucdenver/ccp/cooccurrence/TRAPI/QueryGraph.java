@@ -55,7 +55,7 @@ public class QueryGraph {
     }
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode graphNode = om.createObjectNode();
         ObjectNode nodes = om.createObjectNode();
         ObjectNode edges = om.createObjectNode();
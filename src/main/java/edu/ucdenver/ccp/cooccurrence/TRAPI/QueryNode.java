@@ -79,7 +79,7 @@ public class QueryNode {
     }
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode nodeNode = om.createObjectNode();
         if (ids.size() > 0) {
             nodeNode.set("ids", om.convertValue(ids, ArrayNode.class));
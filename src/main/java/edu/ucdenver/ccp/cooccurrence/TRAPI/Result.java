@@ -1,10 +1,12 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.util.*;
 
 public class Result {
@@ -73,7 +75,7 @@ public class Result {
     }
 
     public JsonNode toJSON() {
-        ObjectMapper mapper = new ObjectMapper();
+        ObjectMapper mapper = Json.MAPPER;
         ObjectNode resultsNode = mapper.createObjectNode();
 
         ObjectNode nodeBindingsNode = mapper.createObjectNode();
@@ -101,6 +103,31 @@ public class Result {
         return resultsNode;
     }
 
+    public void writeJSON(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("node_bindings");
+        for (Map.Entry<String, List<NodeBinding>> nodeBinding : nodeBindings.entrySet()) {
+            generator.writeArrayFieldStart(nodeBinding.getKey());
+            for (NodeBinding binding : nodeBinding.getValue()) {
+                if (binding != null) {
+                    binding.writeJSON(generator);
+                }
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+        generator.writeArrayFieldStart("analyses");
+        for (Analysis analysis : this.analyses) {
+            analysis.writeJSON(generator);
+        }
+        generator.writeEndArray();
+        for (Map.Entry<String, JsonNode> kv : this.additionalProperties.entrySet()) {
+            generator.writeFieldName(kv.getKey());
+            generator.writeTree(kv.getValue());
+        }
+        generator.writeEndObject();
+    }
+
     public static Result parseJSON(JsonNode resultNode) {
         if (!resultNode.hasNonNull("node_bindings") || !resultNode.hasNonNull("analyses") || !resultNode.get("analyses").isArray()) {
             return null;
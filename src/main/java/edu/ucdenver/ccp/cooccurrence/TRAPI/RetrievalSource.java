@@ -1,9 +1,11 @@
 package edu.ucdenver.ccp.cooccurrence.TRAPI;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.util.*;
 
 public class RetrievalSource {
@@ -65,7 +67,7 @@ public class RetrievalSource {
     // endregion
 
     public JsonNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode edgeNode = om.createObjectNode();
         edgeNode.put("resource_id", this.resource);
         edgeNode.put("resource_role", this.resourceRole);
@@ -80,6 +82,23 @@ public class RetrievalSource {
         }
         return edgeNode;
     }
+
+    public void writeJSON(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("resource_id", this.resource);
+        generator.writeStringField("resource_role", this.resourceRole);
+        if (this.upstreamResourceIds.size() > 0) {
+            generator.writeObjectField("upstream_resource_ids", this.upstreamResourceIds);
+        }
+        if (this.sourceRecordUrls.size() > 0) {
+            generator.writeObjectField("source_record_urls", this.sourceRecordUrls);
+        }
+        for (Map.Entry<String, JsonNode> kv : this.additionalProperties.entrySet()) {
+            generator.writeFieldName(kv.getKey());
+            generator.writeTree(kv.getValue());
+        }
+        generator.writeEndObject();
+    }
     public static RetrievalSource parseJSON(JsonNode json) {
         if (!json.hasNonNull("resource_id") || !json.hasNonNull("resource_role")) {
             return null;
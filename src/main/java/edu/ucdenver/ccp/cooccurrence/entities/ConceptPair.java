@@ -5,26 +5,27 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import edu.ucdenver.ccp.cooccurrence.TRAPI.Attribute;
 import edu.ucdenver.ccp.cooccurrence.TRAPI.AttributeConstraint;
+import edu.ucdenver.ccp.cooccurrence.TRAPI.Json;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Pattern;
 
 public class ConceptPair {
 
+    public static final String LOCATED_IN = "biolink:supporting_text_located_in";
+
     private String subject;
     private String object;
     private String subjectKey;
     private String objectKey;
     private String edgeKey;
-    private final Map<String, Metrics> metricsMap;
+    // Indexed by DocumentPart ordinal; null for the parts the pair has no metrics in.
+    private final Metrics[] metrics = new Metrics[DocumentPart.COUNT];
 
     public ConceptPair(String subject, String object) {
         this.subject = subject;
         this.object = object;
-        this.metricsMap = new HashMap<>(4);
     }
 
     public ConceptPair(String subject, String object, String subjectKey, String objectKey, String edgeKey) {
@@ -33,7 +34,6 @@ public class ConceptPair {
         this.subjectKey = subjectKey;
         this.objectKey = objectKey;
         this.edgeKey = edgeKey;
-        this.metricsMap = new HashMap<>(4);
     }
 
     public String getSubject() {
@@ -70,23 +70,23 @@ public class ConceptPair {
         return edgeKey;
     }
 
-    public Metrics getPairMetrics(String documentPart) {
-        return this.metricsMap.getOrDefault(documentPart, null);
+    public Metrics getPairMetrics(DocumentPart documentPart) {
+        return this.metrics[documentPart.ordinal()];
     }
 
-    public void setPairMetrics(String documentPart, Metrics pairMetrics) {
-        this.metricsMap.put(documentPart, pairMetrics);
+    public void setPairMetrics(DocumentPart documentPart, Metrics pairMetrics) {
+        this.metrics[documentPart.ordinal()] = pairMetrics;
     }
 
-    // This method removes parts from the metricsMap that do not satisfy the given constraint.
+    // This method removes parts from the metrics that do not satisfy the given constraint.
     // If none of the metrics meet the constraints, this returns null
     public ConceptPair satisfyConstraint(AttributeConstraint constraint) {
         ConceptPair constrainedConceptPair = new ConceptPair(this.subject, this.object, this.subjectKey, this.objectKey, this.edgeKey);
         int partsCount = 0;
-        for (String part : metricsMap.keySet()) {
-            if (meetsConstraint(constraint, part)) {
+        for (DocumentPart part : DocumentPart.values()) {
+            if (meetsConstraint(constraint, getPairMetrics(part), part)) {
                 partsCount++;
-                constrainedConceptPair.setPairMetrics(part, metricsMap.get(part));
+                constrainedConceptPair.setPairMetrics(part, getPairMetrics(part));
             }
         }
         if (partsCount == 0) {
@@ -95,17 +95,19 @@ public class ConceptPair {
         return constrainedConceptPair;
     }
 
-    private boolean meetsConstraint(AttributeConstraint constraint, String part) {
+    // Whether one part's metrics meet the constraint. Static so the constraint can be checked as soon as the metrics exist, before a pair is built.
+    public static boolean meetsConstraint(AttributeConstraint constraint, Metrics metrics, DocumentPart documentPart) {
         if (!AttributeConstraint.supportedAttributes.contains(constraint.getId())) {
             return false;
         }
-        if (!this.metricsMap.containsKey(part)) {
+        if (metrics == null) {
             return false;
         }
+        if (constraint.getId().equals(LOCATED_IN)) {
+            return meetsLocationConstraint(constraint, documentPart);
+        }
         boolean isList = constraint.getValue().isArray(), isNot = constraint.isNot();
-        String attributeString = null, constraintString;
         double attributeValue, constraintValue;
-        Metrics metrics = this.metricsMap.get(part);
         switch (constraint.getId()) {
             case "biolink:concept_count_subject":
                 attributeValue = metrics.getSingleCount1();
@@ -140,56 +142,26 @@ public class ConceptPair {
         // None of the attributes are list-valued, so if the constraint is a list and the operator is "===" the comparison is necessarily false
         if (isList) {
             for (JsonNode item : constraint.getValue()) {
-                if (constraint.getId().equals("biolink:supporting_text_located_in")) {
-                    // biolink:supporting_text_located_in is currently the only string attribute, so we handle it specially
-                    constraintString = item.asText();
-                    boolean comparisonResult = false;
-                    if (constraint.getOperator().equals("==")) {
-                        comparisonResult = part.equals(constraintString);
-                    } else if (constraint.getOperator().equals("matches")) {
-                        comparisonResult = Pattern.matches(constraintString, part);
-                    }
-                    if ((!isNot && comparisonResult) || (isNot && !comparisonResult)) {
-                        return true;
-                    }
-                } else {
-                    constraintValue = item.asDouble();
-                    boolean comparisonResult = false;
-                    switch (constraint.getOperator()) {
-                        case "==":
-                            comparisonResult = attributeValue == constraintValue;
-                            break;
-                        case ">":
-                            comparisonResult = attributeValue > constraintValue;
-                            break;
-                        case "<":
-                            comparisonResult = attributeValue < constraintValue;
-                            break;
-                    }
-                    if ((!isNot && comparisonResult) || (isNot && !comparisonResult)) {
-                        return true;
-                    }
-                }
-            }
-            return false;
-        } else {
-            boolean comparisonResult = false;
-            if (constraint.getId().equals("biolink:supporting_text_located_in")) {
-                // biolink:supporting_text_located_in is currently the only string attribute, so we handle it specially
-                constraintString = constraint.getValue().asText();
+                constraintValue = item.asDouble();
+                boolean comparisonResult = false;
                 switch (constraint.getOperator()) {
                     case "==":
-                        comparisonResult = part.equals(constraintString);
+                        comparisonResult = attributeValue == constraintValue;
                         break;
-                    case "===":
-                        comparisonResult = part.equals(constraintString) && constraint.getValue().isTextual();
+                    case ">":
+                        comparisonResult = attributeValue > constraintValue;
                         break;
-                    case "matches":
-                        comparisonResult = Pattern.matches(constraintString, part);
+                    case "<":
+                        comparisonResult = attributeValue < constraintValue;
                         break;
                 }
-                return (!isNot && comparisonResult) || (isNot && !comparisonResult);
+                if ((!isNot && comparisonResult) || (isNot && !comparisonResult)) {
+                    return true;
+                }
             }
+            return false;
+        } else {
+            boolean comparisonResult = false;
             constraintValue = constraint.getValue().asDouble();
             switch (constraint.getOperator()) {
                 case "==":
@@ -216,8 +188,45 @@ public class ConceptPair {
         }
     }
 
+    // biolink:supporting_text_located_in is currently the only string attribute, so we handle it specially. It depends on the part alone,
+    // which lets a lookup work out which parts it can return before reading any of them.
+    public static boolean meetsLocationConstraint(AttributeConstraint constraint, DocumentPart documentPart) {
+        String part = documentPart.getName();
+        boolean isNot = constraint.isNot();
+        String constraintString;
+        if (constraint.getValue().isArray()) {
+            for (JsonNode item : constraint.getValue()) {
+                constraintString = item.asText();
+                boolean comparisonResult = false;
+                if (constraint.getOperator().equals("==")) {
+                    comparisonResult = part.equals(constraintString);
+                } else if (constraint.getOperator().equals("matches")) {
+                    comparisonResult = Pattern.matches(constraintString, part);
+                }
+                if ((!isNot && comparisonResult) || (isNot && !comparisonResult)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        boolean comparisonResult = false;
+        constraintString = constraint.getValue().asText();
+        switch (constraint.getOperator()) {
+            case "==":
+                comparisonResult = part.equals(constraintString);
+                break;
+            case "===":
+                comparisonResult = part.equals(constraintString) && constraint.getValue().isTextual();
+                break;
+            case "matches":
+                comparisonResult = Pattern.matches(constraintString, part);
+                break;
+        }
+        return (!isNot && comparisonResult) || (isNot && !comparisonResult);
+    }
+
     public List<Attribute> toAttributeList() {
-        List<Attribute> attributeList = new ArrayList<>(metricsMap.size());
+        List<Attribute> attributeList = new ArrayList<>(DocumentPart.COUNT + 1);
 
         Attribute primaryKnowledgeSource = new Attribute();
         primaryKnowledgeSource.setAttributeTypeId("biolink:primary_knowledge_source");
@@ -226,27 +235,22 @@ public class ConceptPair {
         primaryKnowledgeSource.setAttributeSource("infores:text-mining-provider-cooccurrence");
         attributeList.add(primaryKnowledgeSource);
 
-        for (Map.Entry<String, Metrics> metricsEntry : metricsMap.entrySet()) {
-            Attribute metricsAttribute = new Attribute();
-            metricsAttribute.setAttributeTypeId("biolink:has_supporting_study_result");
-            metricsAttribute.setAttributeSource("infores:text-mining-provider-cooccurrence");
-            String location = "article " + metricsEntry.getKey() + "s";
-            if (metricsEntry.getKey().equals("article")) {
-                location = "articles";
-            }
-            metricsAttribute.setValue("cooccurrence of " + this.subject + " and " + this.object + " in " + location);
-            List<Attribute> subAttributesList = metricsEntry.getValue().toAttributeList();
-            if (subAttributesList.size() == 0) {
+        for (DocumentPart part : DocumentPart.values()) {
+            Metrics partMetrics = getPairMetrics(part);
+            if (partMetrics == null) {
                 continue;
             }
-            subAttributesList.forEach(metricsAttribute::addAttribute);
+            Attribute metricsAttribute = new SupportingStudyResult(partMetrics);
+            metricsAttribute.setAttributeTypeId("biolink:has_supporting_study_result");
+            metricsAttribute.setAttributeSource("infores:text-mining-provider-cooccurrence");
+            metricsAttribute.setValue("cooccurrence of " + this.subject + " and " + this.object + " in " + part.getLocation());
             attributeList.add(metricsAttribute);
         }
         return attributeList;
     }
 
     public JsonNode toJson() {
-        ObjectMapper mapper = new ObjectMapper();
+        ObjectMapper mapper = Json.MAPPER;
         ObjectNode node = mapper.createObjectNode();
         node.put("subject", this.subject);
         node.put("q_subject", this.subjectKey);
@@ -254,8 +258,11 @@ public class ConceptPair {
         node.put("q_object", this.objectKey);
         node.put("q_edge", this.edgeKey);
         ObjectNode metricsNode = mapper.createObjectNode();
-        for (Map.Entry<String, Metrics> entry : this.metricsMap.entrySet()) {
-            metricsNode.set(entry.getKey(), entry.getValue().toJSON());
+        for (DocumentPart part : DocumentPart.values()) {
+            Metrics partMetrics = getPairMetrics(part);
+            if (partMetrics != null) {
+                metricsNode.set(part.getName(), partMetrics.toJSON());
+            }
         }
         node.set("metrics", metricsNode);
         return node;
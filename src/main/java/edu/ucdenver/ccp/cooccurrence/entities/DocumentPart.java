@@ -0,0 +1,47 @@
+package edu.ucdenver.ccp.cooccurrence.entities;
+
+// The parts of a document that cooccurrences are counted in. The name is what the database, the index files and TRAPI use; the ordinal
+// indexes the fixed-size per-part arrays (counts, metrics, PairTable slots), so the order here must not change.
+public enum DocumentPart {
+    ABSTRACT("abstract"),
+    TITLE("title"),
+    SENTENCE("sentence"),
+    ARTICLE("article");
+
+    private static final DocumentPart[] VALUES = values();
+    public static final int COUNT = VALUES.length;
+
+    private final String name;
+
+    DocumentPart(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // How the part is described in the has_supporting_study_result attribute.
+    public String getLocation() {
+        return this == ARTICLE ? "articles" : "article " + name + "s";
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    public static DocumentPart get(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    // Null for an unknown name, e.g. a row of a table that has more parts than we use, so callers decide whether to skip or reject it.
+    public static DocumentPart find(String name) {
+        for (DocumentPart part : VALUES) {
+            if (part.name.equals(name)) {
+                return part;
+            }
+        }
+        return null;
+    }
+}
@@ -1,16 +1,49 @@
 package edu.ucdenver.ccp.cooccurrence.entities;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import edu.ucdenver.ccp.cooccurrence.TRAPI.Attribute;
+import edu.ucdenver.ccp.cooccurrence.TRAPI.Json;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class Metrics {
 
+    private static final String PUBMED = "infores:pubmed";
+    private static final String TMKP = "infores:text-mining-provider-cooccurrence";
+    private static final SerializedString SERIALIZED_PUBMED = new SerializedString(PUBMED);
+
+    private static final AttributeTemplate SUPPORTING_DATA_SOURCE = new AttributeTemplate("biolink:supporting_data_source", "biolink:InformationResource", TMKP, null);
+    private static final AttributeTemplate NGD = new AttributeTemplate("biolink:tmkp_normalized_google_distance", "SIO:000794", TMKP,
+            "The normalized google distance score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
+    private static final AttributeTemplate PMI = new AttributeTemplate("biolink:tmkp_pointwise_mutual_information", "SIO:000794", TMKP,
+            "The pointwise mutual information score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
+    private static final AttributeTemplate NPMI = new AttributeTemplate("biolink:tmkp_normalized_pointwise_mutual_information", "SIO:000794", TMKP,
+            "The normalized pointwise mutual information score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
+    private static final AttributeTemplate NPMI_MAX = new AttributeTemplate("biolink:tmkp_normalized_pointwise_mutual_information_max", "SIO:000794", TMKP,
+            "A variant of the normalized pointwise mutual information score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
+    private static final AttributeTemplate MD = new AttributeTemplate("biolink:tmkp_mutual_dependence", "SIO:000794", TMKP,
+            "The mutual dependence (PMI^2) score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
+    private static final AttributeTemplate LFBMD = new AttributeTemplate("biolink:tmkp_log_frequency_biased_mutual_dependence", "SIO:000794", TMKP,
+            "The log frequency biased mutual dependence score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
+
+    // Indexed by DocumentPart ordinal, with one more for a Metrics that has no part.
+    private static final PartTemplates[] PART_TEMPLATES = new PartTemplates[DocumentPart.COUNT + 1];
+
+    static {
+        for (DocumentPart part : DocumentPart.values()) {
+            PART_TEMPLATES[part.ordinal()] = new PartTemplates(part.getName());
+        }
+        PART_TEMPLATES[DocumentPart.COUNT] = new PartTemplates("blank");
+    }
+
     private int singleCount1;
     private int singleCount2;
     private int pairCount;
@@ -29,21 +62,23 @@ public class Metrics {
 
     private double logFrequencyBiasedMutualDependence;
 
-    private String documentPart;
+    private DocumentPart documentPart;
 
     private List<String> documentIdList;
 
+    private Supplier<List<String>> documentIdSupplier;
+
     public Metrics() {
         this.singleCount1 = 0;
         this.singleCount2 = 0;
         this.pairCount = 0;
         this.conceptCount = 0;
         this.documentCount = 0;
-        this.documentPart = "blank";
+        this.documentPart = null;
         this.documentIdList = new ArrayList<>();
     }
 
-    public Metrics(int singleCount1, int singleCount2, int pairCount, int conceptCount, int documentCount, String part) {
+    public Metrics(int singleCount1, int singleCount2, int pairCount, int conceptCount, int documentCount, DocumentPart part) {
         this.singleCount1 = singleCount1;
         this.singleCount2 = singleCount2;
         this.pairCount = pairCount;
@@ -79,12 +114,26 @@ public class Metrics {
         this.documentCount = documentCount;
     }
 
-    public void setDocumentPart(String part) {
+    public void setDocumentPart(DocumentPart part) {
         this.documentPart = part;
     }
 
     public void setDocumentIdList(List<String> list) {
         this.documentIdList = list;
+        this.documentIdSupplier = null;
+    }
+
+    // The document ids are only built (by calling the supplier, once) if and when they are needed for the publications attribute.
+    public void setDocumentIdSupplier(Supplier<List<String>> supplier) {
+        this.documentIdSupplier = supplier;
+    }
+
+    public List<String> getDocumentIdList() {
+        if (documentIdSupplier != null) {
+            documentIdList = documentIdSupplier.get();
+            documentIdSupplier = null;
+        }
+        return documentIdList;
     }
 
     private static double calculateNormalizedGoogleDistance(int singleCount1, int singleCount2, int pairCount, int totalConceptCount) {
@@ -187,7 +236,7 @@ public class Metrics {
     }
 
     public ObjectNode toJSON() {
-        ObjectMapper om = new ObjectMapper();
+        ObjectMapper om = Json.MAPPER;
         ObjectNode metricsNode = om.createObjectNode();
         metricsNode.put("NGD", normalizedGoogleDistance);
         metricsNode.put("PMI", pointwiseMutualInformation);
@@ -197,111 +246,164 @@ public class Metrics {
     }
 
     public List<Attribute> toAttributeList() {
-        List<Attribute> attributeList = new ArrayList<>();
-
-        Attribute supportingDataSource = new Attribute();
-        supportingDataSource.setAttributeTypeId("biolink:supporting_data_source");
-        supportingDataSource.setValue("infores:pubmed");
-        supportingDataSource.setValueTypeId("biolink:InformationResource");
-        supportingDataSource.setAttributeSource("infores:text-mining-provider-cooccurrence");
-        attributeList.add(supportingDataSource);
-
-        Attribute documentZone = new Attribute();
-        documentZone.setAttributeTypeId("biolink:supporting_text_located_in");
-        documentZone.setValue(this.documentPart);
-        documentZone.setValueTypeId("IAO_0000314");
-        documentZone.setAttributeSource("infores:pubmed");
-        attributeList.add(documentZone);
-
-        Attribute count1 = new Attribute();
-        count1.setAttributeTypeId("biolink:concept_count_subject");
-        count1.setValue(singleCount1);
-        count1.setValueTypeId("SIO:000794");
-        String description = String.format("The number of times concept #1 was observed to occur at the %s level in the documents that were processed", this.documentPart);
-        count1.setDescription(description);
-        count1.setAttributeSource("infores:text-mining-provider-cooccurrence");
-        attributeList.add(count1);
-
-        Attribute count2 = new Attribute();
-        count2.setAttributeTypeId("biolink:concept_count_object");
-        count2.setValue(singleCount2);
-        count2.setValueTypeId("SIO:000794");
-        description = String.format("The number of times concept #2 was observed to occur at the %s level in the documents that were processed", this.documentPart);
-        count2.setDescription(description);
-        count2.setAttributeSource("infores:text-mining-provider-cooccurrence");
-        attributeList.add(count2);
-
-        Attribute pairCountAttribute = new Attribute();
-        pairCountAttribute.setAttributeTypeId("biolink:concept_pair_count");
-        pairCountAttribute.setValue(pairCount);
-        pairCountAttribute.setValueTypeId("SIO:000794");
-        description = String.format("The number of times the concepts of this assertion were observed to cooccur at the %s level in the documents that were processed", this.documentPart);
-        pairCountAttribute.setDescription(description);
-        pairCountAttribute.setAttributeSource("infores:text-mining-provider-cooccurrence");
-        attributeList.add(pairCountAttribute);
-
-        Attribute ngd = new Attribute();
-        ngd.setAttributeTypeId("biolink:tmkp_normalized_google_distance");
-        ngd.setValue(normalizedGoogleDistance);
-        ngd.setValueTypeId("SIO:000794");
-        ngd.setDescription("The normalized google distance score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
-        ngd.setAttributeSource("infores:text-mining-provider-cooccurrence");
-        attributeList.add(ngd);
-
-        Attribute pmi = new Attribute();
-        pmi.setAttributeTypeId("biolink:tmkp_pointwise_mutual_information");
-        pmi.setValue(pointwiseMutualInformation);
-        pmi.setValueTypeId("SIO:000794");
-        pmi.setDescription("The pointwise mutual information score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
-        pmi.setAttributeSource("infores:text-mining-provider-cooccurrence");
-        attributeList.add(pmi);
-
-        Attribute npmi = new Attribute();
-        npmi.setAttributeTypeId("biolink:tmkp_normalized_pointwise_mutual_information");
-        npmi.setValue(normalizedPointwiseMutualInformation);
-        npmi.setValueTypeId("SIO:000794");
-        npmi.setDescription("The normalized pointwise mutual information score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
-        npmi.setAttributeSource("infores:text-mining-provider-cooccurrence");
-        attributeList.add(npmi);
-
-        Attribute npmimd = new Attribute();
-        npmimd.setAttributeTypeId("biolink:tmkp_normalized_pointwise_mutual_information_max");
-        npmimd.setValue(normalizedPointwiseMutualInformationMaxDenom);
-        npmimd.setValueTypeId("SIO:000794");
-        npmimd.setDescription("A variant of the normalized pointwise mutual information score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
-        npmimd.setAttributeSource("infores:text-mining-provider-cooccurrence");
-        attributeList.add(npmimd);
-
-        Attribute md = new Attribute();
-        md.setAttributeTypeId("biolink:tmkp_mutual_dependence");
-        md.setValue(mutualDependence);
-        md.setValueTypeId("SIO:000794");
-        md.setDescription("The mutual dependence (PMI^2) score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
-        md.setAttributeSource("infores:text-mining-provider-cooccurrence");
-        attributeList.add(md);
-
-        Attribute lfbmd = new Attribute();
-        lfbmd.setAttributeTypeId("biolink:tmkp_log_frequency_biased_mutual_dependence");
-        lfbmd.setValue(logFrequencyBiasedMutualDependence);
-        lfbmd.setValueTypeId("SIO:000794");
-        lfbmd.setDescription("The log frequency biased mutual dependence score for the concepts in this assertion based on their cooccurrence in the documents that were processed");
-        lfbmd.setAttributeSource("infores:text-mining-provider-cooccurrence");
-        attributeList.add(lfbmd);
-
-        if (this.documentIdList.size() > 0) {
-            List<String> curiefiedIds = documentIdList.stream()
-                    .map(id -> id.startsWith("PMC") && !id.contains(":") ? id.replace("PMC", "PMC:") : id)
-                    .collect(Collectors.toList());
-            Attribute supportingDocument = new Attribute();
-            supportingDocument.setAttributeTypeId("biolink:publications");
-            supportingDocument.setValue(curiefiedIds);
-            supportingDocument.setValueTypeId("biolink:Uriorcurie");
-            description = String.format("The documents where the concepts of this assertion were observed to cooccur at the %s level.", this.documentPart);
-            supportingDocument.setDescription(description);
-            supportingDocument.setAttributeSource("infores:pubmed");
-            attributeList.add(supportingDocument);
+        PartTemplates templates = getPartTemplates();
+        List<Attribute> attributeList = new ArrayList<>(12);
+        attributeList.add(SUPPORTING_DATA_SOURCE.toAttribute(PUBMED));
+        attributeList.add(templates.locatedIn.toAttribute(templates.name));
+        attributeList.add(templates.subjectCount.toAttribute(singleCount1));
+        attributeList.add(templates.objectCount.toAttribute(singleCount2));
+        attributeList.add(templates.pairCount.toAttribute(pairCount));
+        attributeList.add(NGD.toAttribute(normalizedGoogleDistance));
+        attributeList.add(PMI.toAttribute(pointwiseMutualInformation));
+        attributeList.add(NPMI.toAttribute(normalizedPointwiseMutualInformation));
+        attributeList.add(NPMI_MAX.toAttribute(normalizedPointwiseMutualInformationMaxDenom));
+        attributeList.add(MD.toAttribute(mutualDependence));
+        attributeList.add(LFBMD.toAttribute(logFrequencyBiasedMutualDependence));
+
+        List<String> documentIds = getDocumentIdList();
+        if (documentIds.size() > 0) {
+            List<String> curiefiedIds = documentIds.stream().map(Metrics::curiefy).collect(Collectors.toList());
+            attributeList.add(templates.publications.toAttribute(curiefiedIds));
         }
 
         return attributeList;
     }
-}
\ No newline at end of file
+
+    // Writes the attributes toAttributeList returns, as Attribute.writeJSON would, without building them.
+    public void writeAttributes(JsonGenerator generator) throws IOException {
+        PartTemplates templates = getPartTemplates();
+        SUPPORTING_DATA_SOURCE.write(generator, SERIALIZED_PUBMED);
+        templates.locatedIn.write(generator, templates.serializedName);
+        templates.subjectCount.write(generator, singleCount1);
+        templates.objectCount.write(generator, singleCount2);
+        templates.pairCount.write(generator, pairCount);
+        NGD.write(generator, normalizedGoogleDistance);
+        PMI.write(generator, pointwiseMutualInformation);
+        NPMI.write(generator, normalizedPointwiseMutualInformation);
+        NPMI_MAX.write(generator, normalizedPointwiseMutualInformationMaxDenom);
+        MD.write(generator, mutualDependence);
+        LFBMD.write(generator, logFrequencyBiasedMutualDependence);
+
+        List<String> documentIds = getDocumentIdList();
+        if (documentIds.size() > 0) {
+            templates.publications.writeStart(generator);
+            generator.writeStartArray();
+            for (String id : documentIds) {
+                generator.writeString(curiefy(id));
+            }
+            generator.writeEndArray();
+            templates.publications.writeEnd(generator);
+        }
+    }
+
+    private static String curiefy(String documentId) {
+        return documentId.startsWith("PMC") && !documentId.contains(":") ? documentId.replace("PMC", "PMC:") : documentId;
+    }
+
+    private PartTemplates getPartTemplates() {
+        return PART_TEMPLATES[documentPart == null ? DocumentPart.COUNT : documentPart.ordinal()];
+    }
+
+    // Everything about a metrics attribute but its value. These are made once, so an edge only adds its numbers to them. The strings are
+    // also kept as SerializedStrings, which cache their quoted and encoded bytes, so writing one out is a copy.
+    private static final class AttributeTemplate {
+        private static final SerializedString ATTRIBUTE_TYPE_ID = new SerializedString("attribute_type_id");
+        private static final SerializedString VALUE = new SerializedString("value");
+        private static final SerializedString VALUE_TYPE_ID = new SerializedString("value_type_id");
+        private static final SerializedString ATTRIBUTE_SOURCE = new SerializedString("attribute_source");
+        private static final SerializedString DESCRIPTION = new SerializedString("description");
+
+        private final String attributeTypeId;
+        private final String valueTypeId;
+        private final String attributeSource;
+        private final String description;
+        private final SerializedString serializedAttributeTypeId;
+        private final SerializedString serializedValueTypeId;
+        private final SerializedString serializedAttributeSource;
+        private final SerializedString serializedDescription;
+
+        AttributeTemplate(String attributeTypeId, String valueTypeId, String attributeSource, String description) {
+            this.attributeTypeId = attributeTypeId;
+            this.valueTypeId = valueTypeId;
+            this.attributeSource = attributeSource;
+            this.description = description;
+            this.serializedAttributeTypeId = new SerializedString(attributeTypeId);
+            this.serializedValueTypeId = new SerializedString(valueTypeId);
+            this.serializedAttributeSource = new SerializedString(attributeSource);
+            this.serializedDescription = description == null ? null : new SerializedString(description);
+        }
+
+        Attribute toAttribute(Object value) {
+            Attribute attribute = new Attribute();
+            attribute.setAttributeTypeId(attributeTypeId);
+            attribute.setValue(value);
+            attribute.setValueTypeId(valueTypeId);
+            attribute.setDescription(description);
+            attribute.setAttributeSource(attributeSource);
+            return attribute;
+        }
+
+        void write(JsonGenerator generator, SerializedString value) throws IOException {
+            writeStart(generator);
+            generator.writeString(value);
+            writeEnd(generator);
+        }
+
+        void write(JsonGenerator generator, int value) throws IOException {
+            writeStart(generator);
+            generator.writeNumber(value);
+            writeEnd(generator);
+        }
+
+        void write(JsonGenerator generator, double value) throws IOException {
+            writeStart(generator);
+            generator.writeNumber(value);
+            writeEnd(generator);
+        }
+
+        // The fields before and after the value, in Attribute.writeJSON's order. writeStart leaves the generator ready for the value.
+        void writeStart(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            generator.writeFieldName(ATTRIBUTE_TYPE_ID);
+            generator.writeString(serializedAttributeTypeId);
+            generator.writeFieldName(VALUE);
+        }
+
+        void writeEnd(JsonGenerator generator) throws IOException {
+            generator.writeFieldName(VALUE_TYPE_ID);
+            generator.writeString(serializedValueTypeId);
+            generator.writeFieldName(ATTRIBUTE_SOURCE);
+            generator.writeString(serializedAttributeSource);
+            if (serializedDescription != null) {
+                generator.writeFieldName(DESCRIPTION);
+                generator.writeString(serializedDescription);
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    // The templates whose value or description names the document part.
+    private static final class PartTemplates {
+        private final String name;
+        private final SerializedString serializedName;
+        private final AttributeTemplate locatedIn;
+        private final AttributeTemplate subjectCount;
+        private final AttributeTemplate objectCount;
+        private final AttributeTemplate pairCount;
+        private final AttributeTemplate publications;
+
+        PartTemplates(String name) {
+            this.name = name;
+            this.serializedName = new SerializedString(name);
+            locatedIn = new AttributeTemplate("biolink:supporting_text_located_in", "IAO_0000314", PUBMED, null);
+            subjectCount = new AttributeTemplate("biolink:concept_count_subject", "SIO:000794", TMKP,
+                    String.format("The number of times concept #1 was observed to occur at the %s level in the documents that were processed", name));
+            objectCount = new AttributeTemplate("biolink:concept_count_object", "SIO:000794", TMKP,
+                    String.format("The number of times concept #2 was observed to occur at the %s level in the documents that were processed", name));
+            pairCount = new AttributeTemplate("biolink:concept_pair_count", "SIO:000794", TMKP,
+                    String.format("The number of times the concepts of this assertion were observed to cooccur at the %s level in the documents that were processed", name));
+            publications = new AttributeTemplate("biolink:publications", "biolink:Uriorcurie", PUBMED,
+                    String.format("The documents where the concepts of this assertion were observed to cooccur at the %s level.", name));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package edu.ucdenver.ccp.cooccurrence.entities;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import edu.ucdenver.ccp.cooccurrence.TRAPI.Attribute;
+
+import java.io.IOException;
+import java.util.List;
+
+// A biolink:has_supporting_study_result attribute for one part of a pair, whose sub-attributes are that part's metrics. They are only built
+// as Attributes if something asks for them; writing the attribute out writes the metrics straight from their templates instead.
+class SupportingStudyResult extends Attribute {
+
+    private final Metrics metrics;
+    private boolean built;
+
+    SupportingStudyResult(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<Attribute> getAttributes() {
+        if (!built) {
+            built = true;
+            super.setAttributes(metrics.toAttributeList());
+        }
+        return super.getAttributes();
+    }
+
+    @Override
+    public void setAttributes(List<Attribute> attributes) {
+        built = true;
+        super.setAttributes(attributes);
+    }
+
+    @Override
+    protected void writeSubAttributes(JsonGenerator generator) throws IOException {
+        if (built) {
+            super.writeSubAttributes(generator);
+            return;
+        }
+        generator.writeArrayFieldStart("attributes");
+        metrics.writeAttributes(generator);
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,40 @@
+-- One-time migration for lookup.canonical-pairs=true.
+-- The <part>_cooccurrences tables are not symmetric (a pair may be stored as node1 -> node2, node2 -> node1, or both), which is why
+-- LookupRepository.getCooccurrencesByParts has to run every query a second time with the lists swapped. These tables store each
+-- unordered pair exactly once as (LEAST, GREATEST) so a single query can find it. The original tables are left untouched.
+-- Re-run after every data load: psql -d cooccurrence-data -f canonical_cooccurrences.sql
+BEGIN;
+
+DROP TABLE IF EXISTS abstract_cooccurrences_canonical;
+CREATE TABLE abstract_cooccurrences_canonical AS
+    SELECT DISTINCT LEAST(node1, node2) AS node_low, GREATEST(node1, node2) AS node_high
+    FROM abstract_cooccurrences;
+ALTER TABLE abstract_cooccurrences_canonical ADD PRIMARY KEY (node_low, node_high);
+CREATE INDEX abstract_cooccurrences_canonical_high_idx ON abstract_cooccurrences_canonical (node_high, node_low);
+ANALYZE abstract_cooccurrences_canonical;
+
+DROP TABLE IF EXISTS title_cooccurrences_canonical;
+CREATE TABLE title_cooccurrences_canonical AS
+    SELECT DISTINCT LEAST(node1, node2) AS node_low, GREATEST(node1, node2) AS node_high
+    FROM title_cooccurrences;
+ALTER TABLE title_cooccurrences_canonical ADD PRIMARY KEY (node_low, node_high);
+CREATE INDEX title_cooccurrences_canonical_high_idx ON title_cooccurrences_canonical (node_high, node_low);
+ANALYZE title_cooccurrences_canonical;
+
+DROP TABLE IF EXISTS sentence_cooccurrences_canonical;
+CREATE TABLE sentence_cooccurrences_canonical AS
+    SELECT DISTINCT LEAST(node1, node2) AS node_low, GREATEST(node1, node2) AS node_high
+    FROM sentence_cooccurrences;
+ALTER TABLE sentence_cooccurrences_canonical ADD PRIMARY KEY (node_low, node_high);
+CREATE INDEX sentence_cooccurrences_canonical_high_idx ON sentence_cooccurrences_canonical (node_high, node_low);
+ANALYZE sentence_cooccurrences_canonical;
+
+DROP TABLE IF EXISTS article_cooccurrences_canonical;
+CREATE TABLE article_cooccurrences_canonical AS
+    SELECT DISTINCT LEAST(node1, node2) AS node_low, GREATEST(node1, node2) AS node_high
+    FROM article_cooccurrences;
+ALTER TABLE article_cooccurrences_canonical ADD PRIMARY KEY (node_low, node_high);
+CREATE INDEX article_cooccurrences_canonical_high_idx ON article_cooccurrences_canonical (node_high, node_low);
+ANALYZE article_cooccurrences_canonical;
+
+COMMIT;
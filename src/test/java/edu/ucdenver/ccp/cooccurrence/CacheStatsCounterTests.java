@@ -0,0 +1,33 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheStatsCounterTests {
+
+	@Test
+	void loadTimePercentilesAreWithinABucket() {
+		CacheStatsCounter counter = new CacheStatsCounter();
+		assertEquals(0, counter.getLoadTimePercentile(0.5));
+		for (int i = 1; i <= 100; i++) {
+			counter.recordLoadSuccess(i * 1_000_000L);
+		}
+		assertWithin(50_000_000L, counter.getLoadTimePercentile(0.5));
+		assertWithin(90_000_000L, counter.getLoadTimePercentile(0.9));
+		assertWithin(100_000_000L, counter.getLoadTimePercentile(1.0));
+	}
+
+	@Test
+	void bucketsCoverEveryValueOnce() {
+		for (long value = 0; value < 100_000; value++) {
+			int bucket = LatencyHistogram.bucket(value);
+			assertTrue(value <= LatencyHistogram.upperBound(bucket));
+			assertTrue(bucket == 0 || value > LatencyHistogram.upperBound(bucket - 1));
+		}
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue(actual >= expected && actual <= expected * 1.25, expected + " vs " + actual);
+	}
+}
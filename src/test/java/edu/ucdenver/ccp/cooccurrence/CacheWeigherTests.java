@@ -0,0 +1,68 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheWeigherTests {
+
+	@Test
+	void weightGrowsWithContents() {
+		long small = CacheWeigher.estimate(Map.of("MESH:D1abstract", List.of("PMID:1_a")));
+		long large = CacheWeigher.estimate(Map.of("MESH:D1abstract", List.of("PMID:1_a", "PMID:2_a", "PMID:3_a")));
+		assertTrue(small > 0);
+		assertTrue(large > small);
+		assertEquals(0, CacheWeigher.estimate(null));
+		assertEquals(CacheWeigher.estimate("PMID:1") * 2, new CacheWeigher().weigh("PMID:1", "PMID:2"));
+	}
+
+	@Test
+	void regionSettingsOverrideDefaults() {
+		LookupCacheProperties properties = new LookupCacheProperties();
+		properties.getDefaults().setMaximumWeight(DataSize.ofMegabytes(256));
+		properties.getDefaults().setExpireAfterAccess(Duration.ofHours(6));
+		LookupCacheProperties.Region region = new LookupCacheProperties.Region();
+		region.setMaximumWeight(DataSize.ofGigabytes(4));
+		properties.getRegions().put("getCooccurrencesByParts", region);
+
+		assertEquals(DataSize.ofGigabytes(4), properties.getRegion("getCooccurrencesByParts").getMaximumWeight());
+		assertEquals(Duration.ofHours(6), properties.getRegion("getCooccurrencesByParts").getExpireAfterAccess());
+		assertEquals(DataSize.ofMegabytes(256), properties.getRegion("getLabels").getMaximumWeight());
+	}
+
+	@Test
+	void regionMaximumSizeReplacesDefaultWeight() {
+		LookupCacheProperties properties = new LookupCacheProperties();
+		properties.getDefaults().setMaximumWeight(DataSize.ofMegabytes(256));
+		LookupCacheProperties.Region region = new LookupCacheProperties.Region();
+		region.setMaximumSize(100L);
+		properties.getRegions().put("getLabels", region);
+
+		LookupCacheProperties.Region merged = properties.getRegion("getLabels");
+		assertNull(merged.getMaximumWeight());
+		assertEquals(100, (long) merged.getMaximumSize());
+
+		Cache<Object, Object> cache = CacheConfiguration.newBuilder(merged, new CacheStatsCounter()).build();
+		Policy.Eviction<Object, Object> eviction = cache.policy().eviction().orElseThrow();
+		assertFalse(eviction.isWeighted());
+		assertEquals(100, eviction.getMaximum());
+	}
+
+	@Test
+	void regionMayNotSetBothBounds() {
+		LookupCacheProperties properties = new LookupCacheProperties();
+		LookupCacheProperties.Region region = new LookupCacheProperties.Region();
+		region.setMaximumWeight(DataSize.ofMegabytes(1));
+		region.setMaximumSize(100L);
+		properties.getRegions().put("getLabels", region);
+
+		assertThrows(IllegalStateException.class, () -> properties.getRegion("getLabels"));
+	}
+}
@@ -0,0 +1,68 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTests {
+
+	private final AtomicLong now = new AtomicLong();
+	private final CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofSeconds(10), now::get);
+
+	@Test
+	void opensAfterConsecutiveFailures() {
+		for (int i = 0; i < 2; i++) {
+			assertTrue(breaker.tryAcquire());
+			breaker.recordFailure();
+		}
+		assertTrue(breaker.tryAcquire());
+		breaker.recordSuccess();
+		for (int i = 0; i < 3; i++) {
+			assertTrue(breaker.tryAcquire());
+			breaker.recordFailure();
+		}
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+		assertEquals(1, breaker.getTimesOpened());
+		assertEquals(1, breaker.getRejectedCount());
+	}
+
+	@Test
+	void letsOneTrialThroughAfterTheOpenDuration() {
+		open();
+		now.addAndGet(Duration.ofSeconds(10).toNanos());
+
+		assertTrue(breaker.tryAcquire());
+		assertFalse(breaker.tryAcquire());
+		breaker.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+
+		now.addAndGet(Duration.ofSeconds(10).toNanos());
+		assertTrue(breaker.tryAcquire());
+		breaker.recordSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.tryAcquire());
+		assertTrue(breaker.tryAcquire());
+	}
+
+	@Test
+	void releasedTrialLetsAnotherThrough() {
+		open();
+		now.addAndGet(Duration.ofSeconds(10).toNanos());
+
+		assertTrue(breaker.tryAcquire());
+		breaker.release();
+		assertTrue(breaker.tryAcquire());
+	}
+
+	private void open() {
+		for (int i = 0; i < 3; i++) {
+			breaker.tryAcquire();
+			breaker.recordFailure();
+		}
+	}
+}
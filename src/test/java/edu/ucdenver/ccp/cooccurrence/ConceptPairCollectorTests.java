@@ -0,0 +1,66 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import edu.ucdenver.ccp.cooccurrence.entities.ConceptPair;
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+import edu.ucdenver.ccp.cooccurrence.entities.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConceptPairCollectorTests {
+
+	@Test
+	void keepsEverythingInArrivalOrderWithoutALimit() {
+		ConceptPairCollector collector = new ConceptPairCollector(0, ResultRanking.NGD);
+		for (int pairCount : new int[]{5, 50, 1, 20}) {
+			collector.accept(pair("B:" + pairCount, pairCount));
+		}
+		assertEquals(List.of("B:5", "B:50", "B:1", "B:20"), objects(collector.getPairs()));
+		assertEquals(4, collector.getCandidateCount());
+		assertFalse(collector.isLimited());
+	}
+
+	@Test
+	void keepsTheBestPairsBestFirst() {
+		ConceptPairCollector collector = new ConceptPairCollector(2, ResultRanking.PAIR_COUNT);
+		for (int pairCount : new int[]{5, 50, 1, 20, 7}) {
+			collector.accept(pair("B:" + pairCount, pairCount));
+		}
+		assertEquals(List.of("B:50", "B:20"), objects(collector.getPairs()));
+		assertEquals(5, collector.getCandidateCount());
+		assertTrue(collector.isLimited());
+	}
+
+	@Test
+	void ranksNormalizedGoogleDistanceAscending() {
+		ConceptPairCollector collector = new ConceptPairCollector(1, ResultRanking.NGD);
+		collector.accept(pair("B:5", 5));
+		collector.accept(pair("B:50", 50));
+		collector.accept(pair("B:1", 1));
+		// More cooccurrences with the same single counts means the concepts are closer.
+		assertEquals(List.of("B:50"), objects(collector.getPairs()));
+	}
+
+	@Test
+	void tiesKeepTheEarlierPair() {
+		ConceptPairCollector collector = new ConceptPairCollector(2, ResultRanking.PAIR_COUNT);
+		collector.accept(pair("B:1", 10));
+		collector.accept(pair("B:2", 10));
+		collector.accept(pair("B:3", 10));
+		collector.accept(pair("B:4", 20));
+		assertEquals(List.of("B:4", "B:1"), objects(collector.getPairs()));
+	}
+
+	private static ConceptPair pair(String object, int pairCount) {
+		ConceptPair pair = new ConceptPair("A:1", object);
+		pair.setPairMetrics(DocumentPart.ABSTRACT, new Metrics(100, 100, pairCount, 1000, 1000, DocumentPart.ABSTRACT));
+		return pair;
+	}
+
+	private static List<String> objects(List<ConceptPair> pairs) {
+		return pairs.stream().map(ConceptPair::getObject).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,123 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.TextNode;
+import edu.ucdenver.ccp.cooccurrence.TRAPI.AttributeConstraint;
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+import edu.ucdenver.ccp.cooccurrence.entities.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstraintPlanTests {
+
+	@Test
+	void noConstraintsMeansNoThreshold() {
+		assertSame(ConstraintPlan.NONE, ConstraintPlan.of(Collections.emptyList()));
+		assertTrue(ConstraintPlan.NONE.isEmpty());
+		assertEquals(1, ConstraintPlan.NONE.getMinPairCount());
+		assertTrue(ConstraintPlan.NONE.accepts(metrics(1), DocumentPart.ABSTRACT));
+	}
+
+	@Test
+	void pairCountConstraintsSetTheMinimumPairCount() {
+		assertEquals(11, minPairCount(pairCount(">", IntNode.valueOf(10))));
+		assertEquals(10, minPairCount(pairCount(">", DoubleNode.valueOf(9.5))));
+		assertEquals(10, minPairCount(pairCount("==", IntNode.valueOf(10))));
+		assertEquals(1, minPairCount(pairCount("<", IntNode.valueOf(10))));
+		AttributeConstraint notLessThan = pairCount("<", IntNode.valueOf(10));
+		notLessThan.setNot(true);
+		assertEquals(10, minPairCount(notLessThan));
+		AttributeConstraint notGreaterThan = pairCount(">", IntNode.valueOf(10));
+		notGreaterThan.setNot(true);
+		assertEquals(1, minPairCount(notGreaterThan));
+		assertEquals(1, minPairCount(pairCount(">", TextNode.valueOf("ten"))));
+	}
+
+	@Test
+	void listValuesTakeTheLowestMinimum() {
+		JsonNode values = JsonNodeFactory.instance.arrayNode().add(20).add(5);
+		assertEquals(6, minPairCount(pairCount(">", values)));
+	}
+
+	@Test
+	void constraintsCombineToTheHighestMinimum() {
+		ConstraintPlan plan = ConstraintPlan.of(List.of(pairCount(">", IntNode.valueOf(3)), pairCount(">", IntNode.valueOf(7))));
+		assertEquals(8, plan.getMinPairCount());
+	}
+
+	@Test
+	void acceptsOnlyMetricsThatMeetEveryConstraint() {
+		AttributeConstraint distance = new AttributeConstraint();
+		distance.setId("biolink:tmkp_normalized_google_distance");
+		distance.setName("ngd");
+		distance.setOperator("<");
+		distance.setValue(DoubleNode.valueOf(0.4));
+		ConstraintPlan plan = ConstraintPlan.of(List.of(distance, pairCount(">", IntNode.valueOf(2))));
+		assertEquals(3, plan.getMinPairCount());
+		assertTrue(plan.accepts(metrics(50), DocumentPart.ABSTRACT));
+		assertFalse(plan.accepts(metrics(2), DocumentPart.ABSTRACT));
+		assertFalse(plan.accepts(metrics(3), DocumentPart.ABSTRACT));
+		assertFalse(plan.accepts(null, DocumentPart.ABSTRACT));
+	}
+
+	@Test
+	void locationConstraintsPruneDocumentParts() {
+		assertEquals(EnumSet.allOf(DocumentPart.class), ConstraintPlan.NONE.getDocumentParts());
+		assertEquals(EnumSet.of(DocumentPart.ABSTRACT), parts(locatedIn("==", TextNode.valueOf("abstract"), false)));
+		assertEquals(EnumSet.of(DocumentPart.TITLE, DocumentPart.SENTENCE, DocumentPart.ARTICLE),
+				parts(locatedIn("==", TextNode.valueOf("abstract"), true)));
+		assertEquals(EnumSet.of(DocumentPart.ABSTRACT, DocumentPart.ARTICLE), parts(locatedIn("matches", TextNode.valueOf("a.*"), false)));
+		JsonNode values = JsonNodeFactory.instance.arrayNode().add("title").add("sentence");
+		assertEquals(EnumSet.of(DocumentPart.TITLE, DocumentPart.SENTENCE), parts(locatedIn("==", values, false)));
+		assertTrue(parts(locatedIn("==", TextNode.valueOf("figure"), false)).isEmpty());
+	}
+
+	@Test
+	void locationConstraintsAreNotMetricConstraints() {
+		ConstraintPlan plan = ConstraintPlan.of(List.of(locatedIn("==", TextNode.valueOf("title"), false)));
+		assertFalse(plan.hasMetricConstraints());
+		assertTrue(plan.accepts(metrics(1), DocumentPart.TITLE));
+		assertFalse(plan.accepts(metrics(1), DocumentPart.ABSTRACT));
+		assertTrue(ConstraintPlan.of(List.of(pairCount(">", IntNode.valueOf(1)))).hasMetricConstraints());
+	}
+
+	static AttributeConstraint pairCount(String operator, JsonNode value) {
+		AttributeConstraint constraint = new AttributeConstraint();
+		constraint.setId("biolink:tmkp_concept_pair_count");
+		constraint.setName("pair count");
+		constraint.setOperator(operator);
+		constraint.setValue(value);
+		return constraint;
+	}
+
+	private static AttributeConstraint locatedIn(String operator, JsonNode value, boolean not) {
+		AttributeConstraint constraint = new AttributeConstraint();
+		constraint.setId("biolink:supporting_text_located_in");
+		constraint.setName("located in");
+		constraint.setOperator(operator);
+		constraint.setValue(value);
+		constraint.setNot(not);
+		return constraint;
+	}
+
+	private static Set<DocumentPart> parts(AttributeConstraint constraint) {
+		return ConstraintPlan.of(List.of(constraint)).getDocumentParts();
+	}
+
+	private static int minPairCount(AttributeConstraint constraint) {
+		return ConstraintPlan.of(List.of(constraint)).getMinPairCount();
+	}
+
+	private static Metrics metrics(int pairCount) {
+		return new Metrics(100, 100, pairCount, 1000, 1000, DocumentPart.ABSTRACT);
+	}
+}
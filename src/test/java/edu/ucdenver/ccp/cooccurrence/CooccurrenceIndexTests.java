@@ -0,0 +1,70 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CooccurrenceIndexTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void findsPairsInBothDirections() throws IOException {
+		// (1, 2), (1, 4), (2, 3), (4, 4), written as the builder does: LEAST, GREATEST
+		int[][] pairs = {{1, 2}, {1, 4}, {2, 3}, {4, 4}};
+		int[] degrees = new int[5];
+		Path pairsFile = directory.resolve("abstract.pairs");
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(pairsFile))) {
+			for (int[] pair : pairs) {
+				out.writeInt(pair[0]);
+				out.writeInt(pair[1]);
+				degrees[pair[0]]++;
+				if (pair[0] != pair[1]) {
+					degrees[pair[1]]++;
+				}
+			}
+		}
+		long edgeCount = CooccurrenceIndexBuilder.writeIndex(pairsFile, pairs.length, degrees, CooccurrenceIndex.getPath(directory, DocumentPart.ABSTRACT));
+		assertEquals(7, edgeCount);
+
+		CooccurrenceIndex index = CooccurrenceIndex.open(directory, DocumentPart.ABSTRACT);
+		assertEquals(5, index.getNodeCount());
+		assertEquals(2, index.degree(1));
+		assertTrue(index.contains(2, 1));
+		assertTrue(index.contains(4, 4));
+		assertFalse(index.contains(1, 3));
+		assertFalse(index.contains(7, 1));
+
+		assertEquals(Set.of(List.of(2, 1), List.of(2, 3)), toSet(index.findPairs(new int[]{2}, new int[]{1, 3, 4})));
+		assertEquals(Set.of(List.of(1, 2), List.of(3, 2)), toSet(index.findPairs(new int[]{1, 3, 4}, new int[]{2})));
+		// Both ends in both lists: the pair comes back once per orientation, like the forward plus reversed SQL queries.
+		assertEquals(Set.of(List.of(1, 2), List.of(2, 1)), toSet(index.findPairs(new int[]{1, 2}, new int[]{1, 2})));
+		assertTrue(index.findPairs(new int[]{0, 99}, new int[]{1, 2, 3}).isEmpty());
+	}
+
+	@Test
+	void rejectsFilesThatAreNotIndexes() throws IOException {
+		Files.write(CooccurrenceIndex.getPath(directory, DocumentPart.TITLE), new byte[64]);
+		assertThrows(IOException.class, () -> CooccurrenceIndex.open(directory, DocumentPart.TITLE));
+	}
+
+	private static Set<List<Integer>> toSet(PairList pairs) {
+		Set<List<Integer>> set = new HashSet<>();
+		for (int i = 0; i < pairs.size(); i++) {
+			set.add(List.of(pairs.getConcept1(i), pairs.getConcept2(i)));
+		}
+		return set;
+	}
+}
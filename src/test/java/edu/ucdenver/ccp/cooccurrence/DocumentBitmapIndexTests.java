@@ -0,0 +1,75 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentBitmapIndexTests {
+
+	@Test
+	void countsRecordedPairs() {
+		DocumentBitmapIndex index = DocumentBitmapIndex.builder(5)
+				.startPart(DocumentPart.SENTENCE)
+				.add("PMID:1_a", 1, 2)
+				.add("PMID:1_a", 1, 3)
+				.add("PMID:1_b", 1, 2)
+				.add("PMID:2_a", 2, 3)
+				.add("PMID:3_a", 3, 2)
+				.startPart(DocumentPart.ABSTRACT)
+				.add("PMID:1", 1, 4)
+				.build();
+
+		assertEquals(4, index.getDocumentCount(DocumentPart.SENTENCE));
+		assertEquals(2, index.getPairCount(DocumentPart.SENTENCE, 1, 2));
+		// PMID:1_a has concepts 2 and 3 too, but only PMID:2_a records 2 -> 3
+		assertEquals(1, index.getPairCount(DocumentPart.SENTENCE, 2, 3));
+		assertEquals(1, index.getPairCount(DocumentPart.SENTENCE, 1, 3));
+		assertEquals(0, index.getPairCount(DocumentPart.SENTENCE, 1, 4));
+		assertEquals(1, index.getPairCount(DocumentPart.ABSTRACT, 1, 4));
+		assertEquals(0, index.getPairCount(DocumentPart.TITLE, 1, 2));
+		assertEquals(0, index.getPairCount(DocumentPart.SENTENCE, 7, 1));
+
+		assertEquals(List.of("PMID:1", "PMID:1"), index.getDocumentIds(DocumentPart.SENTENCE, index.getPairDocuments(DocumentPart.SENTENCE, 1, 2)));
+		assertEquals(List.of("PMID:1"), index.getDocumentIds(DocumentPart.ABSTRACT, index.getPairDocuments(DocumentPart.ABSTRACT, 1, 4)));
+	}
+
+	@Test
+	void pairsAreDirected() {
+		DocumentBitmapIndex index = DocumentBitmapIndex.builder(5)
+				.startPart(DocumentPart.SENTENCE)
+				.add("PMID:1_a", 1, 2)
+				.add("PMID:2_a", 2, 3)
+				.add("PMID:3_a", 3, 2)
+				.add("PMID:3_b", 3, 2)
+				.startPart(DocumentPart.ABSTRACT)
+				.add("PMID:1", 1, 4)
+				.build();
+
+		// recorded in one direction only
+		assertEquals(1, index.getPairCount(DocumentPart.SENTENCE, 1, 2));
+		assertEquals(0, index.getPairCount(DocumentPart.SENTENCE, 2, 1));
+		assertEquals(1, index.getPairCount(DocumentPart.ABSTRACT, 1, 4));
+		assertEquals(0, index.getPairCount(DocumentPart.ABSTRACT, 4, 1));
+		// recorded both ways, in different documents
+		assertEquals(List.of("PMID:2"), index.getDocumentIds(DocumentPart.SENTENCE, index.getPairDocuments(DocumentPart.SENTENCE, 2, 3)));
+		assertEquals(List.of("PMID:3", "PMID:3"), index.getDocumentIds(DocumentPart.SENTENCE, index.getPairDocuments(DocumentPart.SENTENCE, 3, 2)));
+	}
+
+	@Test
+	void growsPastItsInitialCapacity() {
+		DocumentBitmapIndex.Builder builder = DocumentBitmapIndex.builder(200).startPart(DocumentPart.SENTENCE);
+		for (int i = 0; i < 199; i++) {
+			builder.add("PMID:" + i + "_a", i, i + 1);
+			builder.add("PMID:" + i + "_a", i + 1, i);
+		}
+		DocumentBitmapIndex index = builder.build();
+		for (int i = 0; i < 199; i++) {
+			assertEquals(1, index.getPairCount(DocumentPart.SENTENCE, i, i + 1));
+			assertEquals(1, index.getPairCount(DocumentPart.SENTENCE, i + 1, i));
+			assertEquals(0, index.getPairCount(DocumentPart.SENTENCE, i, i + 2));
+		}
+	}
+}
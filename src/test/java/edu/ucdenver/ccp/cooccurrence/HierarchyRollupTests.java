@@ -0,0 +1,63 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchyRollupTests {
+
+	private static final NodeDictionary DICTIONARY = NodeDictionary.build(new int[]{0, 1, 2, 3, 4, 5, 6},
+			new String[]{"MESH:P1", "MESH:P2", "MESH:C1", "MESH:C2", "GO:Q", "GO:D1", "GO:D2"});
+
+	@Test
+	void unionsDescendantDocumentsIntoParents() {
+		PairTable<List<String>> cooccurrences = new PairTable<>(DICTIONARY);
+		cooccurrences.put(2, 5, 0, List.of("h1_1", "h2_1"));
+		cooccurrences.put(3, 5, 0, List.of("h2_1", "h3_1"));
+		cooccurrences.put(3, 6, 0, List.of("h5_1"));
+		cooccurrences.put(0, 4, 1, List.of("h4_1"));
+		Map<String, List<String>> subjects = HierarchyRollup.getHierarchy(List.of("MESH:P1", "MESH:P2"),
+				Map.of("MESH:P1", List.of("MESH:C1", "MESH:C2"), "MESH:P2", List.of("MESH:C2")));
+		Map<String, List<String>> objects = HierarchyRollup.getHierarchy(List.of("GO:Q"), Map.of("GO:Q", List.of("GO:D1", "GO:D2")));
+		HierarchyRollup.DocumentIds documentIds = new HierarchyRollup.DocumentIds();
+
+		PairTable<RoaringBitmap> rolledUp = HierarchyRollup.rollUp(cooccurrences, subjects, objects, documentIds::toBitmap);
+
+		assertEquals(2, rolledUp.pairCount());
+		assertEquals(List.of("h1_1", "h2_1", "h3_1", "h5_1"), documentIds.toHashes(rolledUp.get(0, 4, 0)));
+		assertEquals(List.of("h4_1"), documentIds.toHashes(rolledUp.get(0, 4, 1)));
+		assertEquals(List.of("h2_1", "h3_1", "h5_1"), documentIds.toHashes(rolledUp.get(1, 4, 0)));
+		assertNull(rolledUp.get(1, 4, 1));
+		assertNull(rolledUp.get(2, 5, 0));
+	}
+
+	@Test
+	void leavesSharedBitmapsUntouched() {
+		RoaringBitmap shared = RoaringBitmap.bitmapOf(1, 2);
+		PairTable<RoaringBitmap> cooccurrences = new PairTable<>(DICTIONARY);
+		cooccurrences.put(2, 5, 0, shared);
+		cooccurrences.put(3, 5, 0, RoaringBitmap.bitmapOf(3));
+		Map<String, List<String>> subjects = HierarchyRollup.getHierarchy(List.of("MESH:P1"), Map.of("MESH:P1", List.of("MESH:C1", "MESH:C2")));
+		Map<String, List<String>> objects = HierarchyRollup.getHierarchy(List.of("GO:D1"), Map.of());
+
+		PairTable<RoaringBitmap> rolledUp = HierarchyRollup.rollUp(cooccurrences, subjects, objects, bitmap -> bitmap);
+
+		assertEquals(3, rolledUp.get(0, 5, 0).getCardinality());
+		assertEquals(2, shared.getCardinality());
+	}
+
+	@Test
+	void conceptsIncludeParentsAndDescendantsOnce() {
+		Map<String, List<String>> hierarchy = HierarchyRollup.getHierarchy(List.of("MESH:P1", "MESH:P2"),
+				Map.of("MESH:P1", List.of("MESH:C1", "MESH:P2")));
+
+		List<String> concepts = HierarchyRollup.getConcepts(hierarchy);
+
+		assertEquals(3, concepts.size());
+		assertTrue(concepts.containsAll(List.of("MESH:P1", "MESH:P2", "MESH:C1")));
+	}
+}
@@ -0,0 +1,32 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntSetTests {
+
+	@Test
+	void addsEachIdOnce() {
+		IntSet set = new IntSet(3);
+		assertTrue(set.add(0));
+		assertTrue(set.add(7));
+		assertFalse(set.add(0));
+		assertTrue(set.contains(7));
+		assertFalse(set.contains(8));
+		assertEquals(2, set.size());
+	}
+
+	@Test
+	void growsPastItsExpectedSize() {
+		IntSet set = new IntSet(1);
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(set.add(i * 16));
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(set.contains(i * 16));
+			assertFalse(set.contains(i * 16 + 1));
+		}
+		assertEquals(1000, set.size());
+	}
+}
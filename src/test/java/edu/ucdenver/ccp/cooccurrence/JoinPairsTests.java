@@ -0,0 +1,238 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.fasterxml.jackson.databind.node.IntNode;
+import edu.ucdenver.ccp.cooccurrence.entities.ConceptPair;
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+import edu.ucdenver.ccp.cooccurrence.entities.Metrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JoinPairsTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(JoinPairsTests.class);
+
+	private static final String[] CURIES = {"A:1", "A:2", "B:1", "B:2", "A:12", "B:3", "2B:3"};
+	private static final NodeDictionary DICTIONARY = NodeDictionary.build(new int[]{0, 1, 2, 3, 4, 5, 6}, CURIES);
+	private static final Map<String, int[]> ONE = countsOf(List.of(CURIES), new int[]{1, 1, 1, 1});
+
+	@Test
+	void emitsEachCooccurringPairOnce() {
+		PairTable<List<String>> cooccurrences = new PairTable<>(DICTIONARY);
+		cooccurrences.put(0, 2, 0, List.of("d1_1", "d2_1"));
+		cooccurrences.put(0, 2, 2, List.of("d1_2"));
+		cooccurrences.put(0, 3, 1, List.of("d3_1"));
+
+		List<ConceptPair> pairs = join(cooccurrences, ONE);
+
+		assertEquals(2, pairs.size());
+		ConceptPair first = pairs.get(0);
+		assertEquals("A:1", first.getSubject());
+		assertEquals("B:1", first.getObject());
+		assertNotNull(first.getPairMetrics(DocumentPart.ABSTRACT));
+		assertNotNull(first.getPairMetrics(DocumentPart.SENTENCE));
+		assertNull(first.getPairMetrics(DocumentPart.TITLE));
+		assertEquals(List.of("d1", "d2"), first.getPairMetrics(DocumentPart.ABSTRACT).getDocumentIdList());
+		assertNotNull(pairs.get(1).getPairMetrics(DocumentPart.TITLE));
+	}
+
+	@Test
+	void skipsPartsWithoutTotalCounts() {
+		PairTable<List<String>> cooccurrences = new PairTable<>(DICTIONARY);
+		cooccurrences.put(0, 2, 0, List.of("d1_1"));
+		cooccurrences.put(1, 2, 0, List.of("d1_1"));
+		cooccurrences.put(1, 2, 1, List.of("d1_2"));
+
+		List<ConceptPair> pairs = join(cooccurrences, countsOf(List.of("A:2", "B:1"), new int[]{0, 1, 1, 1}));
+
+		assertEquals(1, pairs.size());
+		assertEquals("A:2", pairs.get(0).getSubject());
+		assertNull(pairs.get(0).getPairMetrics(DocumentPart.ABSTRACT));
+		assertNotNull(pairs.get(0).getPairMetrics(DocumentPart.TITLE));
+	}
+
+	@Test
+	void dropsPartsThatFailTheConstraints() {
+		PairTable<List<String>> cooccurrences = new PairTable<>(DICTIONARY);
+		cooccurrences.put(0, 2, 0, List.of("d1_1", "d2_1"));
+		cooccurrences.put(0, 2, 2, List.of("d1_2"));
+		cooccurrences.put(0, 3, 1, List.of("d3_1"));
+
+		List<ConceptPair> pairs = join(cooccurrences, ONE, ConstraintPlan.of(List.of(ConstraintPlanTests.pairCount(">", IntNode.valueOf(1)))));
+
+		assertEquals(1, pairs.size());
+		assertEquals("B:1", pairs.get(0).getObject());
+		assertNotNull(pairs.get(0).getPairMetrics(DocumentPart.ABSTRACT));
+		assertNull(pairs.get(0).getPairMetrics(DocumentPart.SENTENCE));
+	}
+
+	@Test
+	void documentCountsJoinLikeTheirDocuments() {
+		PairTable<List<String>> cooccurrences = new PairTable<>(DICTIONARY);
+		cooccurrences.put(0, 2, 0, List.of("d1_1", "d2_1"));
+		cooccurrences.put(0, 2, 2, List.of("d1_2"));
+		cooccurrences.put(0, 3, 1, List.of("d3_1"));
+		PairTable<Integer> documentCounts = new PairTable<>(DICTIONARY);
+		documentCounts.put(0, 2, 0, 2);
+		documentCounts.put(0, 2, 2, 1);
+		documentCounts.put(0, 3, 1, 1);
+
+		List<ConceptPair> pairs = join(cooccurrences, ONE);
+		List<ConceptPair> countedPairs = new ArrayList<>();
+		CooccurrenceController.joinPairs(documentCounts, Integer::intValue, (part, count) -> Collections::emptyList, ONE, ONE,
+				new int[DocumentPart.COUNT], ConstraintPlan.NONE, countedPairs::add);
+
+		assertEquals(pairs.size(), countedPairs.size());
+		for (int i = 0; i < pairs.size(); i++) {
+			for (DocumentPart part : DocumentPart.values()) {
+				Metrics metrics = pairs.get(i).getPairMetrics(part);
+				Metrics countedMetrics = countedPairs.get(i).getPairMetrics(part);
+				assertEquals(metrics == null, countedMetrics == null);
+				if (metrics != null) {
+					assertEquals(metrics.getPairCount(), countedMetrics.getPairCount());
+					assertEquals(metrics.getNormalizedGoogleDistance(), countedMetrics.getNormalizedGoogleDistance());
+					assertTrue(countedMetrics.getDocumentIdList().isEmpty());
+				}
+			}
+		}
+		// Without document ids there is no publications attribute.
+		assertTrue(countedPairs.get(0).getPairMetrics(DocumentPart.ABSTRACT).toAttributeList().stream()
+				.noneMatch(attribute -> attribute.getAttributeTypeId().equals("biolink:publications")));
+	}
+
+	@Test
+	void documentIdsEndAtTheFirstUnderscore() {
+		assertEquals(List.of("12345", "PMC678", "d", "", "nohash"),
+				CooccurrenceController.getDocumentIds(List.of("12345_abstract_1", "PMC678_1", "d_", "_1", "nohash")));
+	}
+
+	@Test
+	void totalCountsPreferHierarchicalCounts() {
+		Map<String, int[]> hierarchyCounts = Map.of("A:1", new int[]{10, 0, 30, 40});
+		Map<String, int[]> topLevelCounts = Map.of("A:1", new int[]{1, 2, 3, 4}, "A:2", new int[]{5, 6, 7, 8});
+
+		Map<String, int[]> totalCounts = CooccurrenceController.getTotalCounts(hierarchyCounts, topLevelCounts);
+
+		assertArrayEquals(new int[]{10, 2, 30, 40}, totalCounts.get("A:1"));
+		assertArrayEquals(new int[]{5, 6, 7, 8}, totalCounts.get("A:2"));
+		assertArrayEquals(new int[]{1, 2, 3, 4}, topLevelCounts.get("A:1"));
+	}
+
+	@Test
+	void pairTableKeysAreNotAmbiguous() {
+		PairTable<Integer> table = new PairTable<>(DICTIONARY);
+		table.put(DICTIONARY.getId("A:1"), DICTIONARY.getId("2B:3"), 0, 1);
+		table.put(DICTIONARY.getId("A:12"), DICTIONARY.getId("B:3"), 0, 2);
+
+		assertEquals(2, table.size());
+		assertEquals(2, table.pairCount());
+		assertEquals(1, table.get("A:1", "2B:3", DocumentPart.ABSTRACT));
+		assertEquals(2, table.get("A:12", "B:3", DocumentPart.ABSTRACT));
+		assertNull(table.get("A:1", "2B:3", DocumentPart.TITLE));
+		assertNull(table.get("A:1", "UNKNOWN:1", DocumentPart.ABSTRACT));
+		assertThrows(IllegalArgumentException.class, () -> table.put(0, 2, 4, 3));
+	}
+
+	@Test
+	void pairTableGrowsAndKeepsInsertionOrder() {
+		PairTable<Integer> table = new PairTable<>(DICTIONARY);
+		for (int i = 0; i < 10_000; i++) {
+			table.put(i, 9_999 - i, i % 4, i);
+		}
+		table.put(0, 9_999, 1, -1);
+
+		assertEquals(10_000, table.pairCount());
+		assertEquals(10_001, table.size());
+		for (int i = 0; i < 10_000; i++) {
+			assertEquals(i, table.getConcept1(i));
+			assertEquals(9_999 - i, table.getConcept2(i));
+			assertEquals(i, table.get(i, 9_999 - i, i % 4));
+		}
+		assertEquals(-1, table.getValue(0, 1));
+		assertNull(table.get(9_999, 0, 0));
+	}
+
+	// A synthetic 50k x 50k category query with 2M cooccurring (pair, part) entries. The old dense loop would have built 2.5 billion
+	// ConceptPairs and 10 billion concatenated keys; it is timed on a 2k x 2k slice for comparison.
+	// Run with: mvn test -Dbenchmark=true -Dtest=JoinPairsTests
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void joinFiftyThousandByFiftyThousand() {
+		int curieCount = 50_000;
+		int[] ids = new int[curieCount * 2];
+		String[] curies = new String[curieCount * 2];
+		for (int i = 0; i < curieCount; i++) {
+			ids[i] = i;
+			curies[i] = "MESH:D" + i;
+			ids[curieCount + i] = curieCount + i;
+			curies[curieCount + i] = "NCBIGene:" + i;
+		}
+		NodeDictionary dictionary = NodeDictionary.build(ids, curies);
+		Map<String, int[]> counts = countsOf(List.of(curies), new int[]{1, 1, 1, 1});
+		List<String> subjects = List.of(curies).subList(0, curieCount);
+		List<String> objects = List.of(curies).subList(curieCount, curieCount * 2);
+		Random random = new Random(42);
+		PairTable<List<String>> cooccurrences = new PairTable<>(dictionary);
+		Map<String, List<String>> flatCooccurrences = new HashMap<>();
+		List<String> documents = List.of("d1_1", "d2_1");
+		for (int i = 0; i < 2_000_000; i++) {
+			int subject = random.nextInt(curieCount);
+			int object = curieCount + random.nextInt(curieCount);
+			int part = random.nextInt(4);
+			cooccurrences.put(subject, object, part, documents);
+			flatCooccurrences.put(curies[subject] + curies[object] + DocumentPart.get(part).getName(), documents);
+		}
+
+		for (int run = 0; run < 3; run++) {
+			long start = System.nanoTime();
+			int pairs = join(cooccurrences, counts).size();
+			logger.info(String.format("Sparse join, %d x %d curies: %d pairs in %.1fms", curieCount, curieCount, pairs, (System.nanoTime() - start) / 1e6));
+			assertTrue(pairs > 0);
+		}
+		int slice = 2_000;
+		for (int run = 0; run < 3; run++) {
+			long start = System.nanoTime();
+			int found = 0;
+			for (String sub : subjects.subList(0, slice)) {
+				for (String obj : objects.subList(0, slice)) {
+					ConceptPair pair = new ConceptPair(sub, obj);
+					for (DocumentPart part : DocumentPart.values()) {
+						if (flatCooccurrences.containsKey(sub + obj + part.getName())) {
+							found++;
+						}
+					}
+				}
+			}
+			logger.info(String.format("Dense loop, %d x %d curies: %d entries in %.1fms", slice, slice, found, (System.nanoTime() - start) / 1e6));
+		}
+	}
+
+	private static List<ConceptPair> join(PairTable<List<String>> cooccurrences, Map<String, int[]> totalCounts) {
+		return join(cooccurrences, totalCounts, ConstraintPlan.NONE);
+	}
+
+	private static List<ConceptPair> join(PairTable<List<String>> cooccurrences, Map<String, int[]> totalCounts, ConstraintPlan constraints) {
+		List<ConceptPair> pairs = new ArrayList<>();
+		int count = CooccurrenceController.joinPairs(cooccurrences, List::size,
+				(part, hashes) -> () -> CooccurrenceController.getDocumentIds(hashes),
+				totalCounts, totalCounts, new int[DocumentPart.COUNT], constraints, pairs::add);
+		assertEquals(pairs.size(), count);
+		return pairs;
+	}
+
+	private static Map<String, int[]> countsOf(List<String> curies, int[] partCounts) {
+		Map<String, int[]> counts = new HashMap<>();
+		curies.forEach(curie -> counts.put(curie, partCounts));
+		return counts;
+	}
+}
@@ -0,0 +1,76 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Timing comparisons against a populated database. Run with: mvn test -Dbenchmark=true [-Dbenchmark.category=biolink:Disease]
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class LookupRepositoryBenchmarkTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(LookupRepositoryBenchmarkTests.class);
+
+	private static final int ITERATIONS = 5;
+
+	@Autowired
+	private LookupRepository lookupRepository;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Test
+	void arrayParametersVersusChunkedInLists() {
+		String category = System.getProperty("benchmark.category", "biolink:Disease");
+		List<String> curies = lookupRepository.getCuriesForCategory(category);
+		logger.info(String.format("Benchmarking %d curies from %s", curies.size(), category));
+
+		time("getCategoriesForCuries", curies, lookupRepository::getCategoriesForCuries);
+		time("getLabels", curies, lookupRepository::getLabels);
+		time("getSingleCounts", curies, lookupRepository::getSingleCounts);
+		time("getHierchicalCounts", curies, lookupRepository::getHierchicalCounts);
+		time("getIds", curies, lookupRepository::getIds);
+		time("getCooccurrencesByParts", curies, c -> lookupRepository.getCooccurrencesByParts(c, c.subList(0, Math.min(c.size(), 1000)),
+				EnumSet.allOf(DocumentPart.class)));
+	}
+
+	private void time(String name, List<String> curies, Consumer<List<String>> call) {
+		boolean original = lookupRepository.isArrayParameters();
+		try {
+			for (boolean arrayMode : new boolean[]{false, true}) {
+				lookupRepository.setArrayParameters(arrayMode);
+				clearCaches();
+				call.accept(curies); // warm up the connection pool and the plan cache
+				long total = 0;
+				for (int i = 0; i < ITERATIONS; i++) {
+					clearCaches();
+					long start = System.nanoTime();
+					call.accept(curies);
+					total += System.nanoTime() - start;
+				}
+				logger.info(String.format("%-24s %-8s %8.1fms", name, arrayMode ? "array" : "chunked", total / 1e6 / ITERATIONS));
+			}
+		} finally {
+			lookupRepository.setArrayParameters(original);
+		}
+	}
+
+	private void clearCaches() {
+		for (String name : cacheManager.getCacheNames()) {
+			Cache cache = cacheManager.getCache(name);
+			if (cache != null) {
+				cache.clear();
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A local stand-in for the Node Normalizer's /get_normalized_nodes endpoint, for tests and load tests. Every curie normalizes to itself
+// with one made-up synonym, except those starting with "UNKNOWN:", which come back null as they do from the real service. Each response
+// is held back for latencyMillis plus perCurieMicros for every curie in the batch.
+// Standalone: java -cp <test classpath> edu.ucdenver.ccp.cooccurrence.MockNodeNormalizer [port] [latency ms] [per-curie us]
+// and point sri.url at http://localhost:<port>/
+class MockNodeNormalizer implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(MockNodeNormalizer.class);
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final long latencyMillis;
+	private final long perCurieMicros;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private volatile boolean failing;
+
+	MockNodeNormalizer(int port, long latencyMillis, long perCurieMicros) throws IOException {
+		this.latencyMillis = latencyMillis;
+		this.perCurieMicros = perCurieMicros;
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.createContext("/get_normalized_nodes", this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+		long latency = args.length > 1 ? Long.parseLong(args[1]) : 200;
+		long perCurie = args.length > 2 ? Long.parseLong(args[2]) : 100;
+		MockNodeNormalizer server = new MockNodeNormalizer(port, latency, perCurie);
+		logger.info("Mock Node Normalizer listening on " + server.getUrl());
+	}
+
+	String getUrl() {
+		return "http://localhost:" + server.getAddress().getPort() + "/";
+	}
+
+	int getRequestCount() {
+		return requests.get();
+	}
+
+	int getMaxInFlight() {
+		return maxInFlight.get();
+	}
+
+	// While set, every request gets a 500.
+	void setFailing(boolean failing) {
+		this.failing = failing;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+		try {
+			// Read the whole body first, even to fail: answering before it's read can leave the client's pooled connection half-used,
+			// and the next request on it then fails before it ever reaches this handler.
+			JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+			if (failing) {
+				exchange.sendResponseHeaders(500, -1);
+				return;
+			}
+			ObjectNode response = objectMapper.createObjectNode();
+			for (JsonNode curieNode : request.get("curies")) {
+				String curie = curieNode.asText();
+				if (curie.startsWith("UNKNOWN:")) {
+					response.putNull(curie);
+					continue;
+				}
+				ObjectNode node = response.putObject(curie);
+				node.putObject("id").put("identifier", curie).put("label", curie + " label");
+				node.putArray("equivalent_identifiers").add(objectMapper.createObjectNode().put("identifier", curie))
+						.add(objectMapper.createObjectNode().put("identifier", "SYNONYM:" + curie));
+				node.putArray("type").add("biolink:NamedThing");
+			}
+			Thread.sleep(latencyMillis + perCurieMicros * request.get("curies").size() / 1000);
+			byte[] body = objectMapper.writeValueAsBytes(response);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			exchange.sendResponseHeaders(503, -1);
+		} finally {
+			inFlight.decrementAndGet();
+			exchange.close();
+		}
+	}
+}
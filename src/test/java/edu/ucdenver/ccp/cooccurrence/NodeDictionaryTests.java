@@ -0,0 +1,36 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeDictionaryTests {
+
+	@Test
+	void resolvesCuriesAndIdsBothWays() {
+		int size = 10000;
+		int[] ids = new int[size];
+		String[] curies = new String[size];
+		for (int i = 0; i < size; i++) {
+			ids[i] = i * 3 + 1;
+			curies[i] = "MESH:D" + i;
+		}
+		NodeDictionary dictionary = NodeDictionary.build(ids, curies);
+		assertEquals(size, dictionary.size());
+		for (int i = 0; i < size; i++) {
+			assertEquals(i * 3 + 1, dictionary.getId("MESH:D" + i));
+			assertEquals("MESH:D" + i, dictionary.getCurie(i * 3 + 1));
+		}
+		assertEquals(NodeDictionary.NOT_FOUND, dictionary.getId("MESH:D" + size));
+		assertNull(dictionary.getCurie(2));
+	}
+
+	@Test
+	void getIdsSkipsUnknownAndRepeatedCuries() {
+		NodeDictionary dictionary = NodeDictionary.build(new int[]{5, 9}, new String[]{"CHEBI:1", "CHEBI:2"});
+		assertArrayEquals(new int[]{9, 5}, dictionary.getIds(List.of("CHEBI:2", "CHEBI:3", "CHEBI:2", "CHEBI:1")));
+		assertEquals(0, NodeDictionary.build(new int[0], new String[0]).getIds(List.of("CHEBI:1")).length);
+	}
+}
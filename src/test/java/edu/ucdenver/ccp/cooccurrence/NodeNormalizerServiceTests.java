@@ -0,0 +1,160 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeNormalizerServiceTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(NodeNormalizerServiceTests.class);
+
+	@Test
+	void mergesConcurrentBatches() throws Exception {
+		try (MockNodeNormalizer mock = new MockNodeNormalizer(0, 50, 0)) {
+			NodeNormalizerService service = newService(newProperties(mock, 3, 10));
+			List<String> curies = new ArrayList<>();
+			for (int i = 0; i < 95; i++) {
+				curies.add("MESH:D" + i);
+			}
+			curies.add("MESH:D0");
+			curies.add("UNKNOWN:1");
+
+			JsonNode normalized = service.getNormalizedNodesInBatches(curies);
+
+			assertEquals(96, normalized.size());
+			assertEquals("MESH:D42 label", service.getNodeName("MESH:D42", normalized));
+			assertEquals(List.of("MESH:D7", "SYNONYM:MESH:D7"), service.getNodeSynonyms("MESH:D7", normalized));
+			assertTrue(normalized.get("UNKNOWN:1").isNull());
+			assertEquals(10, mock.getRequestCount());
+			assertTrue(mock.getMaxInFlight() > 1 && mock.getMaxInFlight() <= 3, "max in flight " + mock.getMaxInFlight());
+		}
+	}
+
+	@Test
+	void repeatedCuriesComeFromTheCache() throws Exception {
+		try (MockNodeNormalizer mock = new MockNodeNormalizer(0, 0, 0)) {
+			NodeNormalizerService service = newService(newProperties(mock, 3, 10));
+			service.getNormalizedNodesInBatches(List.of("MESH:D1", "UNKNOWN:1"));
+			assertEquals(1, mock.getRequestCount());
+
+			JsonNode normalized = service.getNormalizedNodesInBatches(List.of("MESH:D1", "UNKNOWN:1", "MESH:D2"));
+
+			assertEquals(2, mock.getRequestCount());
+			assertEquals(3, normalized.size());
+			assertEquals("MESH:D1 label", service.getNodeName("MESH:D1", normalized));
+			assertEquals(List.of("biolink:NamedThing"), service.getNodeCategories("MESH:D1", normalized));
+			assertTrue(normalized.get("UNKNOWN:1").isNull());
+		}
+	}
+
+	@Test
+	void emptyInputMakesNoRequests() throws Exception {
+		try (MockNodeNormalizer mock = new MockNodeNormalizer(0, 0, 0)) {
+			NodeNormalizerService service = newService(newProperties(mock, 3, 10));
+			assertEquals(0, service.getNormalizedNodesInBatches(List.of()).size());
+			assertEquals(0, mock.getRequestCount());
+		}
+	}
+
+	@Test
+	void batchSizeFollowsLatency() {
+		AdaptiveBatchSize batchSize = new AdaptiveBatchSize(1000, 100, 5000, Duration.ofSeconds(2));
+		assertEquals(1000, batchSize.next());
+		batchSize.record(1000, Duration.ofSeconds(1).toNanos());
+		assertEquals(2000, batchSize.next());
+		// One slow batch (30ms per curie) only moves the 1ms average to 0.3 * 30 + 0.7 * 1 = 9.7ms, so 2s / 9.7ms = 206 curies.
+		batchSize.record(2000, Duration.ofSeconds(60).toNanos());
+		assertEquals(206, batchSize.next());
+		// Two more at 30ms per curie bring it to 15.79ms (126 curies), then 20.05ms, which is under the minimum.
+		batchSize.record(206, Duration.ofMillis(206 * 30).toNanos());
+		assertEquals(126, batchSize.next());
+		batchSize.record(126, Duration.ofMillis(126 * 30).toNanos());
+		assertEquals(100, batchSize.next());
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchSize(50, 100, 5000, Duration.ofSeconds(2)));
+	}
+
+	@Test
+	void lateBatchesAreDroppedAtTheDeadline() throws Exception {
+		try (MockNodeNormalizer mock = new MockNodeNormalizer(0, 2000, 0)) {
+			NodeNormalizerProperties properties = newProperties(mock, 3, 10);
+			properties.setDeadline(Duration.ofMillis(200));
+			NodeNormalizerService service = newService(properties);
+
+			long start = System.nanoTime();
+			JsonNode normalized = service.getNormalizedNodesInBatches(List.of("MESH:D1", "MESH:D2"));
+
+			assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+			assertEquals(0, normalized.size());
+			assertEquals(1L, service.getStatistics().get("timeouts"));
+		}
+	}
+
+	@Test
+	void breakerSkipsTheServiceAfterRepeatedFailures() throws Exception {
+		try (MockNodeNormalizer mock = new MockNodeNormalizer(0, 0, 0)) {
+			mock.setFailing(true);
+			NodeNormalizerProperties properties = newProperties(mock, 1, 10);
+			properties.getBreaker().setFailureThreshold(2);
+			NodeNormalizerService service = newService(properties);
+			for (int i = 0; i < 4; i++) {
+				assertEquals(0, service.getNormalizedNodesInBatches(List.of("MESH:D" + i)).size());
+			}
+
+			assertEquals(2, mock.getRequestCount());
+			assertEquals("OPEN", service.getStatistics().get("breaker_state"));
+			assertEquals(2L, service.getStatistics().get("skipped_by_breaker"));
+		}
+	}
+
+	// Run with: mvn test -Dbenchmark=true -Dtest=NodeNormalizerServiceTests
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void normalizeTwentyThousandCuries() throws Exception {
+		try (MockNodeNormalizer mock = new MockNodeNormalizer(0, 200, 100)) {
+			NodeNormalizerProperties properties = newProperties(mock, 4, 1000);
+			properties.getBatchSize().setMin(100);
+			properties.getBatchSize().setMax(5000);
+			properties.setDeadline(Duration.ofSeconds(30));
+			NodeNormalizerService service = newService(properties);
+			List<String> curies = new ArrayList<>();
+			for (int i = 0; i < 20000; i++) {
+				curies.add("MESH:D" + i);
+			}
+			for (int run = 0; run < 3; run++) {
+				long start = System.nanoTime();
+				int size = service.getNormalizedNodesInBatches(curies).size();
+				logger.info(String.format("%d curies normalized in %.1fms", size, (System.nanoTime() - start) / 1e6));
+			}
+			logger.info(String.format("%d requests, at most %d in flight", mock.getRequestCount(), mock.getMaxInFlight()));
+		}
+	}
+
+	private static NodeNormalizerProperties newProperties(MockNodeNormalizer mock, int maxInFlight, int batchSize) {
+		NodeNormalizerProperties properties = new NodeNormalizerProperties();
+		properties.setUrl(mock.getUrl());
+		properties.setMaxInFlight(maxInFlight);
+		properties.getBatchSize().setInitial(batchSize);
+		properties.getBatchSize().setMin(batchSize);
+		properties.getBatchSize().setMax(batchSize);
+		properties.setBatchTargetLatency(Duration.ofSeconds(1));
+		properties.getHedge().setEnabled(false);
+		return properties;
+	}
+
+	private static NodeNormalizerService newService(NodeNormalizerProperties properties) {
+		return new NodeNormalizerService(WebClient.builder(), properties, newCache());
+	}
+
+	private static NormalizedNodeCache newCache() {
+		return new NormalizedNodeCache(10000, Duration.ofDays(1), Duration.ofHours(1), "", null);
+	}
+}
@@ -0,0 +1,62 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NormalizedNodeCacheTests {
+
+	private static final String RESPONSE = "{" +
+			"\"MESH:D1\": {\"id\": {\"identifier\": \"MESH:D1\", \"label\": \"one\"}, \"type\": [\"biolink:Disease\"], \"information_content\": 90.1," +
+			"  \"equivalent_identifiers\": [{\"identifier\": \"MESH:D1\", \"label\": \"one\"}, {\"identifier\": \"DOID:1\"}]}," +
+			"\"UNKNOWN:1\": null}";
+
+	@Test
+	void keepsOnlyTheFieldsThatAreRead() throws Exception {
+		NormalizedNodeCache cache = new NormalizedNodeCache(100, Duration.ofDays(1), Duration.ofHours(1), "", null);
+		cache.putAll(List.of("MESH:D1", "UNKNOWN:1", "MESH:D2"), new ObjectMapper().readTree(RESPONSE));
+
+		Map<String, JsonNode> nodes = cache.getAllPresent(List.of("MESH:D1", "UNKNOWN:1", "MESH:D2"));
+
+		assertEquals(2, nodes.size());
+		assertFalse(nodes.get("MESH:D1").has("information_content"));
+		assertEquals("one", nodes.get("MESH:D1").get("id").get("label").asText());
+		assertEquals("DOID:1", nodes.get("MESH:D1").get("equivalent_identifiers").get(1).get("identifier").asText());
+		assertFalse(nodes.get("MESH:D1").get("equivalent_identifiers").get(0).has("label"));
+		assertTrue(nodes.get("UNKNOWN:1").isNull());
+	}
+
+	@Test
+	void negativeEntriesExpireSeparately() throws Exception {
+		NormalizedNodeCache cache = new NormalizedNodeCache(100, Duration.ofDays(1), Duration.ZERO, "", null);
+		cache.putAll(List.of("MESH:D1", "UNKNOWN:1"), new ObjectMapper().readTree(RESPONSE));
+
+		Map<String, JsonNode> nodes = cache.getAllPresent(List.of("MESH:D1", "UNKNOWN:1"));
+
+		assertTrue(nodes.containsKey("MESH:D1"));
+		assertFalse(nodes.containsKey("UNKNOWN:1"));
+	}
+
+	@Test
+	void survivesARestartThroughTheSpillFile(@TempDir Path directory) throws Exception {
+		String file = directory.resolve("normalized-nodes.jsonl").toString();
+		NormalizedNodeCache cache = new NormalizedNodeCache(100, Duration.ofDays(1), Duration.ofHours(1), file, null);
+		cache.putAll(List.of("MESH:D1", "UNKNOWN:1"), new ObjectMapper().readTree(RESPONSE));
+		cache.destroy();
+
+		NormalizedNodeCache restarted = new NormalizedNodeCache(100, Duration.ofDays(1), Duration.ofHours(1), file, null);
+		Map<String, JsonNode> nodes = restarted.getAllPresent(List.of("MESH:D1", "UNKNOWN:1"));
+
+		assertEquals(2, restarted.size());
+		assertEquals("one", nodes.get("MESH:D1").get("id").get("label").asText());
+		assertTrue(nodes.get("UNKNOWN:1").isNull());
+	}
+}
@@ -0,0 +1,41 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PairListTests {
+
+	@Test
+	void keepsPairsInOrderAndGrows() {
+		PairList pairs = new PairList(1);
+		for (int i = 0; i < 100; i++) {
+			pairs.add(i, Integer.MAX_VALUE - i);
+		}
+		assertEquals(100, pairs.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, pairs.getConcept1(i));
+			assertEquals(Integer.MAX_VALUE - i, pairs.getConcept2(i));
+		}
+		assertThrows(IndexOutOfBoundsException.class, () -> pairs.getConcept1(100));
+	}
+
+	@Test
+	void distinctDropsRepeatsButKeepsDirection() {
+		PairList pairs = new PairList();
+		pairs.add(2, 1);
+		pairs.add(1, 2);
+		pairs.add(2, 1);
+		pairs.add(1, 3);
+		PairList distinct = pairs.distinct();
+		assertEquals(3, distinct.size());
+		assertEquals(1, distinct.getConcept1(0));
+		assertEquals(2, distinct.getConcept2(0));
+		assertEquals(1, distinct.getConcept1(1));
+		assertEquals(3, distinct.getConcept2(1));
+		assertEquals(2, distinct.getConcept1(2));
+		assertEquals(1, distinct.getConcept2(2));
+		assertEquals(4, pairs.size());
+		assertTrue(new PairList().distinct().isEmpty());
+	}
+}
@@ -0,0 +1,194 @@
+package edu.ucdenver.ccp.cooccurrence;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import edu.ucdenver.ccp.cooccurrence.TRAPI.*;
+import edu.ucdenver.ccp.cooccurrence.entities.ConceptPair;
+import edu.ucdenver.ccp.cooccurrence.entities.DocumentPart;
+import edu.ucdenver.ccp.cooccurrence.entities.Metrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrapiStreamingTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(TrapiStreamingTests.class);
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@Test
+	void knowledgeGraphStreamsAsItsTree() throws IOException {
+		KnowledgeGraph graph = new KnowledgeGraph();
+		KnowledgeNode node = new KnowledgeNode("aspirin", List.of("biolink:ChemicalEntity"));
+		node.addAttribute(attribute("biolink:synonym", List.of("ASA", "acetylsalicylic acid")));
+		graph.addNode("CHEBI:15365", node);
+		graph.addNode("MONDO:0005148", new KnowledgeNode(null, new ArrayList<>()));
+		graph.addEdge("e0", edge());
+		graph.addAdditionalProperty("extra", TextNode.valueOf("kept"));
+
+		assertEquals(MAPPER.writeValueAsString(graph.toJSON()), write(graph::writeJSON));
+	}
+
+	@Test
+	void resultsStreamAsTheirTrees() throws IOException {
+		Result result = new Result();
+		NodeBinding binding = new NodeBinding();
+		binding.setId("CHEBI:15365");
+		binding.setQueryId("CHEBI:15365");
+		binding.addAdditionalProperty("extra", TextNode.valueOf("kept"));
+		result.addNodeBinding("n0", binding);
+		result.addNodeBinding("n0", null);
+		Analysis analysis = new Analysis();
+		analysis.setResourceId("infores:text-mining-provider-cooccurrence");
+		analysis.setScore(0.25);
+		EdgeBinding edgeBinding = new EdgeBinding();
+		edgeBinding.setId("e0");
+		edgeBinding.addAttribute(attribute("biolink:tmkp_concept_pair_count", 12));
+		analysis.addEdgeBinding("q0", edgeBinding);
+		AuxiliaryGraph supportGraph = new AuxiliaryGraph();
+		supportGraph.addEdge("e0");
+		analysis.addSupportGraph(supportGraph);
+		result.addAnalysis(analysis);
+		result.addAdditionalProperty("extra", TextNode.valueOf("kept"));
+
+		assertEquals(MAPPER.writeValueAsString(result.toJSON()), write(result::writeJSON));
+	}
+
+	@Test
+	void attributeValuesKeepTheirTypes() throws IOException {
+		for (Object value : new Object[]{"text", 12, BigInteger.TEN.pow(30), 1.5f, 0.125, Double.NaN, true, List.of(1, 2), null}) {
+			Attribute attribute = attribute("biolink:has_count", value);
+			attribute.setOriginalAttributeName("count");
+			attribute.setValueUrl("https://example.org");
+			attribute.setDescription("A count");
+			assertEquals(MAPPER.writeValueAsString(attribute.toJSON()), write(attribute::writeJSON), String.valueOf(value));
+		}
+	}
+
+	@Test
+	void pairAttributesStreamAsTheirTrees() throws IOException {
+		ConceptPair pair = new ConceptPair("CHEBI:15365", "MONDO:0005148");
+		Metrics abstractMetrics = new Metrics(100, 200, 12, 1_000_000, 2_000_000, DocumentPart.ABSTRACT);
+		abstractMetrics.setDocumentIdList(List.of("12345", "PMC678", "PMC:9"));
+		pair.setPairMetrics(DocumentPart.ABSTRACT, abstractMetrics);
+		pair.setPairMetrics(DocumentPart.SENTENCE, new Metrics(0, 5, 0, 1_000, 2_000, DocumentPart.SENTENCE));
+		Metrics blank = new Metrics(3, 4, 2, 10, 20, null);
+		blank.setDocumentIdSupplier(() -> List.of("PMC1"));
+		pair.setPairMetrics(DocumentPart.TITLE, blank);
+
+		for (Attribute attribute : pair.toAttributeList()) {
+			String streamed = write(attribute::writeJSON);
+			assertEquals(MAPPER.writeValueAsString(attribute.toJSON()), streamed);
+			// Once built, the sub-attributes are the ones written.
+			assertEquals(streamed, write(attribute::writeJSON));
+		}
+	}
+
+	@Test
+	void addedSubAttributesKeepTheMetrics() throws IOException {
+		ConceptPair pair = new ConceptPair("CHEBI:15365", "MONDO:0005148");
+		pair.setPairMetrics(DocumentPart.ABSTRACT, new Metrics(100, 200, 12, 1_000_000, 2_000_000, DocumentPart.ABSTRACT));
+		Attribute supportingStudy = pair.toAttributeList().get(1);
+		supportingStudy.addAttribute(attribute("biolink:has_count", 1));
+		assertEquals(12, supportingStudy.getAttributes().size());
+		assertEquals(MAPPER.writeValueAsString(supportingStudy.toJSON()), write(supportingStudy::writeJSON));
+	}
+
+	// Builds a 100k edge knowledge graph from ConceptPairs (each in two parts, with three documents) and streams it, as /query does.
+	// Run with: mvn test -Dbenchmark=true -Dtest=TrapiStreamingTests
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void streamOneHundredThousandEdges() throws IOException {
+		int edgeCount = 100_000;
+		List<ConceptPair> pairs = new ArrayList<>(edgeCount);
+		for (int i = 0; i < edgeCount; i++) {
+			ConceptPair pair = new ConceptPair("MESH:D" + i, "NCBIGene:" + i);
+			for (DocumentPart part : new DocumentPart[]{DocumentPart.ABSTRACT, DocumentPart.SENTENCE}) {
+				Metrics metrics = new Metrics(100 + i % 50, 200 + i % 70, 1 + i % 30, 1_000_000, 2_000_000, part);
+				metrics.setDocumentIdList(List.of(i + "_1", "PMC" + i + "_2", (i + 7) + "_3"));
+				pair.setPairMetrics(part, metrics);
+			}
+			pairs.add(pair);
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+		for (int run = 0; run < 5; run++) {
+			long allocated = threads.getCurrentThreadAllocatedBytes();
+			long start = System.nanoTime();
+			KnowledgeGraph graph = new KnowledgeGraph();
+			for (int i = 0; i < edgeCount; i++) {
+				ConceptPair pair = pairs.get(i);
+				graph.addEdge("e" + i, new KnowledgeEdge(pair.getSubject(), pair.getObject(), "biolink:occurs_together_in_literature_with",
+						pair.toAttributeList()));
+			}
+			long built = System.nanoTime();
+			CountingOutputStream out = new CountingOutputStream();
+			try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+				graph.writeJSON(generator);
+			}
+			long written = System.nanoTime();
+			logger.info(String.format("%d edges: built in %.1fms, streamed %.1fMB in %.1fms, %.1fMB allocated", edgeCount, (built - start) / 1e6,
+					out.count / 1e6, (written - built) / 1e6, (threads.getCurrentThreadAllocatedBytes() - allocated) / 1e6));
+			assertTrue(out.count > 0);
+		}
+	}
+
+	private static final class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	private static KnowledgeEdge edge() {
+		Attribute supportingStudy = attribute("biolink:has_supporting_study_result", "tmkp:1");
+		supportingStudy.addAttribute(attribute("biolink:tmkp_normalized_google_distance", 0.3));
+		supportingStudy.addAttribute(attribute("biolink:supporting_document", "PMID:1|PMID:2"));
+		KnowledgeEdge edge = new KnowledgeEdge("CHEBI:15365", "MONDO:0005148", "biolink:occurs_together_in_literature_with",
+				new ArrayList<>(List.of(supportingStudy)));
+		RetrievalSource source = new RetrievalSource();
+		source.setResource("infores:text-mining-provider-cooccurrence");
+		source.setResourceRole("primary_knowledge_source");
+		source.addSourceRecordUrl("https://example.org/record");
+		edge.addSource(source);
+		Qualifier qualifier = new Qualifier();
+		qualifier.setTypeId("biolink:object_aspect_qualifier");
+		qualifier.setValue("activity");
+		edge.addQualifier(qualifier);
+		return edge;
+	}
+
+	private static Attribute attribute(String typeId, Object value) {
+		Attribute attribute = new Attribute();
+		attribute.setAttributeTypeId(typeId);
+		attribute.setValue(value);
+		attribute.setAttributeSource("infores:text-mining-provider-cooccurrence");
+		return attribute;
+	}
+
+	private static String write(CooccurrenceController.JsonWriter writer) throws IOException {
+		StringWriter out = new StringWriter();
+		try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+			writer.write(generator);
+		}
+		return out.toString();
+	}
+}